@@ -0,0 +1,188 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * BatchSolver.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves many problems in a single run, a bounded number of them at the same time, each by its own solver.
+ * Every job writes a single tab separated record to standard output, once it is done: its status, the problem file, the
+ * number of resources needed, a lower bound on that number and the time taken in milliseconds, or the error that stopped
+ * it. The other output of the solvers is suppressed. A summary of the throughput and the latencies follows at the end.
+ */
+public class BatchSolver {
+   public static class Record {
+      protected final String source, error;
+      protected final double resources, bound;
+      protected final long   millis;
+
+      public Record(String source, double resources, double bound, long millis, String error) {
+         this.source    = source;
+         this.resources = resources;
+         this.bound     = bound;
+         this.millis    = millis;
+         this.error     = error;
+      }
+
+      @Override
+      public String toString() {
+         if(error != null)
+            return "ERROR\t" + source + "\t\t\t" + millis + "\t" + error;
+         return "OK\t" + source + "\t" + (long) resources + "\t" + (long) Math.ceil(bound - 1e-6) + "\t" + millis;
+      }
+   }
+
+   protected final Options options;
+
+   protected final ArrayList<Record> records = new ArrayList<Record>();
+
+   public BatchSolver(Options options) {
+      this.options = options;
+   }
+
+   /**
+    * Returns the problem files to solve: the given files, the .problem files in the given directories, or, if there are no
+    * arguments, the files named on each line of standard input, which are only read as jobs are started.
+    */
+   public static Iterator<String> sources(ArrayList<String> args) {
+      if(args.isEmpty()) {
+         BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+         return in.lines().map(String::trim).filter((String l) -> !l.isEmpty()).iterator();
+      }
+
+      ArrayList<String> sources = new ArrayList<String>();
+      for(String arg : args) {
+         File[] fs = new File(arg).listFiles((File d, String n) -> n.endsWith(".problem"));
+         if(fs == null)
+            sources.add(arg);
+         else {
+            Arrays.sort(fs);
+            for(File f : fs) {
+               sources.add(f.getPath());
+            }
+         }
+      }
+      return sources.iterator();
+   }
+
+   /**
+    * Solves the problems in the given files, using options.jobs threads, and prints a record per job and a summary.
+    */
+   public void solve(Iterator<String> sources) {
+      Logger.Level    level   = Logger.MinimumLevel;
+      ExecutorService pool    = Executors.newFixedThreadPool(options.jobs);
+      // Only hand out a few more jobs than there are threads, so a long stream of files is read as the jobs progress
+      Semaphore       permits = new Semaphore(2 * options.jobs);
+      long            start   = System.nanoTime();
+      Logger.MinimumLevel = Logger.Level.ERROR;
+      try {
+         while(sources.hasNext()) {
+            String source = sources.next();
+            permits.acquireUninterruptibly();
+            pool.execute(() -> {
+               try {
+                  Record r = solve(source);
+                  synchronized(records) {
+                     records.add(r);
+                     System.out.println(r);
+                  }
+               }
+               finally {
+                  permits.release();
+               }
+            });
+         }
+      }
+      finally {
+         pool.shutdown();
+         try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+         }
+         catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+         }
+         Logger.MinimumLevel = level;
+      }
+      printSummary((System.nanoTime() - start) / 1e9);
+   }
+
+   /**
+    * Solves the problem in the given file, and returns the record of the outcome.
+    */
+   protected Record solve(String source) {
+      long start = System.nanoTime();
+      try {
+         Problem problem;
+         try(InputStream in = new FileInputStream(source)) {
+            problem = new Problem(in, source);
+         }
+         if(options.heuristic) {
+            HeuristicSolver solver = new HeuristicSolver(problem, options);
+            return new Record(source, solver.solve().size(), solver.areaBound(), millis(start), null);
+         }
+         try(Solver solver = new Solver(problem, options)) {
+            solver.solve();
+            return new Record(source, solver.resources, solver.resourcesBound, millis(start), null);
+         }
+      }
+      catch(IOException ex) {
+         return new Record(source, 0d, 0d, millis(start), ex.toString());
+      }
+      catch(RuntimeException ex) {
+         return new Record(source, 0d, 0d, millis(start), (ex.getMessage() == null ? ex.toString() : ex.getMessage()));
+      }
+   }
+
+   protected static long millis(long start) {
+      return (System.nanoTime() - start) / 1000000L;
+   }
+
+   /**
+    * Prints the number of jobs, how many of them failed, the throughput and the 50th, 90th and 99th percentile latencies.
+    */
+   protected void printSummary(double seconds) {
+      long[] ms     = records.stream().mapToLong((Record r) -> r.millis).sorted().toArray();
+      long   failed = records.stream().filter((Record r) -> r.error != null).count();
+      Logger.info("Batch:").inBoldYellow().println();
+      Logger.info("   Solved " + (ms.length - failed) + " of " + ms.length + " problems in " + String.format("%.3f", seconds) + " seconds, " + String.format("%.2f", ms.length / Math.max(seconds, 1e-9)) + " per second").println();
+      if(ms.length > 0)
+         Logger.info("   Latency: p50 " + percentile(ms, 50) + " ms, p90 " + percentile(ms, 90) + " ms, p99 " + percentile(ms, 99) + " ms, max " + ms[ms.length - 1] + " ms").println();
+   }
+
+   /**
+    * Returns the p-th percentile of the given sorted values, by the nearest rank.
+    */
+   protected static long percentile(long sorted[], int p) {
+      return sorted[Math.max(0, (int) Math.ceil(p / 100d * sorted.length) - 1)];
+   }
+}
@@ -0,0 +1,105 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * Bounds.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+/**
+ * Cheap necessary conditions for a set of shapes to fit on a single resource, checked before any geometric search.
+ * The cutting loss is accounted for by enlarging every shape and the resource by the cutting loss, after which the shapes
+ * simply may not overlap. Since shapes may be turned, each bound takes the orientation that is least restrictive.
+ */
+public class Bounds {
+   protected final static double Epsilon = 1e-9;
+
+   /**
+    * Dual-feasible functions, given as {type, parameter}: the identity, u^(k) from Fekete and Schepers, and the function
+    * that rounds large items up to the full size and drops small ones, with a threshold of 1/parameter.
+    */
+   protected final static int Identity = 0, U = 1, Large = 2;
+   protected final static int[][] Functions = { {Identity, 0}, {U, 1}, {U, 2}, {U, 3}, {Large, 3}, {Large, 4} };
+
+   /**
+    * Returns false if the given shapes can certainly not be arranged on a single resource.
+    */
+   public static boolean mayFit(Problem problem, Shape shapes[]) {
+      int  k      = problem.cuttingLoss,
+           width  = problem.resourceWidth  + k,
+           height = problem.resourceHeight + k;
+      long area   = 0L;
+      int  wide   = 0, tall = 0;
+      for(Shape s : shapes) {
+         boolean normal = (s.width  <= problem.resourceWidth && s.height <= problem.resourceHeight),
+                 turned = (s.height <= problem.resourceWidth && s.width  <= problem.resourceHeight);
+         // Every shape has to fit on its own
+         if(!normal && !turned)
+            return false;
+         area += (long) (s.width + k) * (s.height + k);
+
+         // Shapes wider than half the resource in any orientation cannot be placed next to each other, so their heights
+         // have to add up; likewise for shapes taller than half the resource
+         int w = Math.min(normal ? s.width  : Integer.MAX_VALUE, turned ? s.height : Integer.MAX_VALUE),
+             h = Math.min(normal ? s.height : Integer.MAX_VALUE, turned ? s.width  : Integer.MAX_VALUE);
+         if(2 * (w + k) > width)
+            wide += Math.min(normal ? s.height : Integer.MAX_VALUE, turned ? s.width  : Integer.MAX_VALUE) + k;
+         if(2 * (h + k) > height)
+            tall += Math.min(normal ? s.width  : Integer.MAX_VALUE, turned ? s.height : Integer.MAX_VALUE) + k;
+      }
+      // Continuous bound on the total area
+      if(area > (long) width * height || wide > height || tall > width)
+         return false;
+
+      // Bounds from pairs of dual-feasible functions applied to the widths and heights
+      for(int[] fx : Functions) {
+         for(int[] fy : Functions) {
+            if(fx[0] == Identity && fy[0] == Identity)
+               continue;
+            double sum = 0d;
+            for(Shape s : shapes) {
+               double normal = (s.width  <= problem.resourceWidth && s.height <= problem.resourceHeight ? apply(fx, s.width  + k, width) * apply(fy, s.height + k, height) : Double.MAX_VALUE),
+                      turned = (s.height <= problem.resourceWidth && s.width  <= problem.resourceHeight ? apply(fx, s.height + k, width) * apply(fy, s.width  + k, height) : Double.MAX_VALUE);
+               sum += Math.min(normal, turned);
+            }
+            if(sum > 1d + Epsilon)
+               return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Applies the given dual-feasible function to a/b, which should lie between zero and one.
+    */
+   protected static double apply(int f[], int a, int b) {
+      switch(f[0]) {
+         case U:
+            // u^(k)(x) = x if (k + 1) * x is integral, floor((k + 1) * x) / k otherwise
+            if(((long) (f[1] + 1) * a) % b == 0)
+               return (double) a / b;
+            return (double) (((long) (f[1] + 1) * a) / b) / f[1];
+         case Large:
+            if((long) f[1] * a > (long) (f[1] - 1) * b)
+               return 1d;
+            if((long) f[1] * a < b)
+               return 0d;
+            return (double) a / b;
+         default:
+            return (double) a / b;
+      }
+   }
+}
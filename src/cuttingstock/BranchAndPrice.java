@@ -0,0 +1,232 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * BranchAndPrice.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Finds an integral solution by branch-and-price over the columns of a Solver.
+ * Every node bounds the number of times a single column may be used, and columns are generated at each node until the lp
+ * of that node is solved to optimality. Nodes are explored in order of their bounds, and rounding up as well as diving
+ * from the root provide incumbents early on, so most of the tree can be pruned.
+ */
+public class BranchAndPrice {
+   protected static class Node {
+      protected final Node   parent;
+      protected final int    column, depth;
+      protected final double lower, upper, bound;
+
+      protected Node() {
+         this(null, -1, 0d, Double.POSITIVE_INFINITY, 0d);
+      }
+
+      /**
+       * Creates a child of the given node, in which the given column is used between lower and upper times.
+       */
+      protected Node(Node parent, int column, double lower, double upper, double bound) {
+         this.parent = parent;
+         this.column = column;
+         this.depth  = (parent == null ? 0 : parent.depth + 1);
+         this.lower  = lower;
+         this.upper  = upper;
+         this.bound  = bound;
+      }
+   }
+
+   protected final static double Epsilon      = 1e-6;
+   protected final static int    MaxNodes     = 200;
+   protected final static int    MaxDiveDepth = 100;
+
+   protected final Solver        solver;
+   protected final MasterProblem master;
+
+   protected double[] incumbent      = new double[0];
+   protected double   incumbentValue = Double.POSITIVE_INFINITY;
+   protected double   lowerBound     = 0d, rootBound = 0d;
+   // Lowest bound of the nodes that were closed without the pricer proving their lp optimal, which may hide better solutions
+   protected double   closedBound    = Double.POSITIVE_INFINITY;
+   protected int      nodes          = 0;
+
+   public BranchAndPrice(Solver solver) {
+      this.solver = solver;
+      this.master = solver.master;
+   }
+
+   /**
+    * Returns the number of times each column of the solver is used in the best integral solution that was found.
+    */
+   public double[] solve() {
+      PriorityQueue<Node> queue = new PriorityQueue<Node>(Comparator.comparingDouble((Node n) -> n.bound).thenComparing((Node n) -> -n.depth));
+      Node root = new Node();
+      queue.add(root);
+      // The root is always solved, so there is an incumbent even if the time is up already
+      while(!queue.isEmpty() && nodes < MaxNodes && (nodes == 0 || !solver.stopped()) && !withinGap(queue)) {
+         Node node = queue.poll();
+         if(prune(node.bound))
+            continue;
+
+         nodes++;
+         apply(node);
+         if(!solver.generateColumns()) {
+            if(!solver.proven)
+               closedBound = Math.min(closedBound, node.bound);
+            continue;
+         }
+         // Without a proof from the pricer, a node is bounded by its parent only
+         double   z = Math.max(node.bound, solver.bound());
+         double[] x = solver.values();
+         if(node == root)
+            rootBound = z;
+         Logger.debug("   Node " + nodes + " at depth " + node.depth + " has bound " + z).println();
+         if(prune(z))
+            continue;
+
+         // Rounding up every column always covers the demand, since every column covers shapes only
+         offer(roundUp(x));
+
+         int j = branchingColumn(x);
+         if(j >= 0) {
+            queue.add(new Node(node, j, 0d, Math.floor(x[j]), z));
+            queue.add(new Node(node, j, Math.ceil(x[j]), Double.POSITIVE_INFINITY, z));
+         }
+         else if(!solver.proven)
+            closedBound = Math.min(closedBound, z);
+         if(node == root)
+            dive();
+      }
+      apply(root);
+
+      lowerBound = globalBound(queue);
+      Logger.info("   Explored " + nodes + " node" + (nodes == 1 ? "" : "s") + "; root bound " + rootBound + ", lower bound " + lowerBound + ", best solution " + incumbentValue + ", gap " + String.format("%.2f%%", 100d * gap(lowerBound))).println();
+      return Arrays.copyOf(incumbent, solver.columnList.size());
+   }
+
+   /**
+    * Returns a lower bound on every integral solution: the lowest bound of the nodes that are still open or were closed
+    * without a proof, rounded up, or the incumbent if there are none.
+    */
+   protected double globalBound(PriorityQueue<Node> queue) {
+      double bound = Math.min(incumbentValue, Math.ceil(Math.max(closedBound, rootBound) - Epsilon));
+      if(!queue.isEmpty())
+         bound = Math.min(bound, Math.ceil(Math.max(queue.peek().bound, rootBound) - Epsilon));
+      // Rounding a bound of zero up would otherwise report it as -0.0
+      return Math.max(bound, 0d);
+   }
+
+   /**
+    * Returns the gap between the incumbent and the given lower bound, relative to the incumbent.
+    */
+   protected double gap(double bound) {
+      return (Double.isInfinite(incumbentValue) ? 1d : (incumbentValue - bound) / incumbentValue);
+   }
+
+   protected boolean withinGap(PriorityQueue<Node> queue) {
+      return !Double.isInfinite(incumbentValue) && gap(globalBound(queue)) <= solver.options.gap + Epsilon && nodes > 0;
+   }
+
+   /**
+    * Returns whether a node with the given bound cannot yield a better solution than the incumbent.
+    */
+   protected boolean prune(double bound) {
+      return Math.ceil(bound - Epsilon) >= incumbentValue - Epsilon;
+   }
+
+   /**
+    * Restricts the columns of the lp to the bounds of the given node and its ancestors.
+    */
+   protected void apply(Node node) {
+      solver.restricted = (node.parent != null);
+      for(int i = 0; i < solver.columnList.size(); i++) {
+         master.setBounds(solver.lpColumn(i), 0d, Double.POSITIVE_INFINITY);
+      }
+      for(Node n = node; n.parent != null; n = n.parent) {
+         int c = solver.lpColumn(n.column);
+         master.setBounds(c, Math.max(master.lower(c), n.lower), Math.min(master.upper(c), n.upper));
+      }
+   }
+
+   /**
+    * Returns the column whose value is furthest from integral, or -1 if all values are integral.
+    */
+   protected int branchingColumn(double x[]) {
+      int    best = -1;
+      double dist = Epsilon;
+      for(int i = 0; i < x.length; i++) {
+         double d = Math.min(x[i] - Math.floor(x[i]), Math.ceil(x[i]) - x[i]);
+         if(d > dist) {
+            best = i;
+            dist = d;
+         }
+      }
+      return best;
+   }
+
+   /**
+    * Repeatedly fixes the column that is closest to being used once more, and generates columns again, until the solution
+    * becomes integral. Only lower bounds are raised, so the lp stays feasible.
+    */
+   protected void dive() {
+      for(int d = 0; d < MaxDiveDepth && !solver.stopped(); d++) {
+         double[] x    = solver.values();
+         int      best = -1;
+         for(int i = 0; i < x.length; i++) {
+            double f = x[i] - Math.floor(x[i]);
+            if(f > Epsilon && f < 1d - Epsilon && (best < 0 || f > x[best] - Math.floor(x[best])))
+               best = i;
+         }
+         if(best < 0)
+            return;
+
+         solver.restricted = true;
+         master.setBounds(solver.lpColumn(best), Math.ceil(x[best]), Double.POSITIVE_INFINITY);
+         if(!solver.generateColumns() || prune(solver.bound()))
+            return;
+         offer(roundUp(solver.values()));
+      }
+   }
+
+   protected double[] roundUp(double x[]) {
+      double[] r = new double[x.length];
+      for(int i = 0; i < x.length; i++) {
+         r[i] = Math.ceil(x[i] - Epsilon);
+      }
+      return r;
+   }
+
+   /**
+    * Replaces the incumbent by the given integral solution if it uses fewer resources.
+    */
+   protected void offer(double x[]) {
+      double value = 0d;
+      for(double v : x) {
+         value += v;
+      }
+      if(value < incumbentValue - Epsilon) {
+         Logger.debug("   New incumbent using " + Math.round(value) + " resources").println();
+         incumbent      = x;
+         incumbentValue = value;
+         solver.upperBound = Math.min(solver.upperBound, value);
+         if(solver.listener != null)
+            solver.listener.incumbent(value);
+      }
+   }
+}
@@ -19,98 +19,168 @@
 
 package cuttingstock;
 
-import java.util.function.Consumer;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.BitSet;
 
+/**
+ * A single way of cutting a resource, i.e. the shapes placed on it and their locations.
+ * Placements are kept in parallel primitive arrays and can be undone in reverse order using pop(), so a search can try
+ * and retract locations without allocating anything.
+ */
 public class Column {
-   public static class Loc {
-      protected boolean turn;
-      protected int     x, y;
-
-      public Loc(int x, int y, boolean turn) {
-         this.x    = x;
-         this.y    = y;
-         this.turn = turn;
-      }
-
-      @Override
-      public int hashCode() {
-         return 472 * x + 849 * y + (turn ? 84934 : 21038);
-      }
-
-      @Override
-      public String toString() {
-         return (turn ? "t" : "") + x + "," + y;
-      }
-   }
-
    protected final Problem problem;
 
-   protected HashMap<Loc, Shape> map = new HashMap<Loc, Shape>();
+   protected int[]         xs, ys, ids;
+   protected BitSet        turns;
+   protected int           size   = 0;
+   protected CutTree       cuts   = null;
+   protected OccupancyGrid grid   = null;
+   protected ShapeCounts   counts = null;
 
    public Column(Problem problem) {
+      this(problem, 8);
+   }
+
+   public Column(Problem problem, int capacity) {
       this.problem = problem;
+      this.xs      = new int[capacity];
+      this.ys      = new int[capacity];
+      this.ids     = new int[capacity];
+      this.turns   = new BitSet(capacity);
    }
 
    public Column(Column that) {
       this.problem = that.problem;
-      map.putAll(that.map);
+      this.xs      = Arrays.copyOf(that.xs, that.size);
+      this.ys      = Arrays.copyOf(that.ys, that.size);
+      this.ids     = Arrays.copyOf(that.ids, that.size);
+      this.turns   = (BitSet) that.turns.clone();
+      this.size    = that.size;
+      this.cuts    = that.cuts;
+      this.counts  = that.counts;
+   }
+
+   public int size() {
+      return size;
    }
 
-   public boolean add(Loc l, Shape s) {
-      if(check(l, s)) {
-         map.put(l, s);
-         return true;
+   /**
+    * Returns the spatial index of the placed shapes, which is only built once it is needed, as most columns are never
+    * changed after they have been created.
+    */
+   protected OccupancyGrid grid() {
+      if(grid == null) {
+         grid = new OccupancyGrid(problem);
+         for(int i = 0; i < size; i++) {
+            Shape s = shape(i);
+            boolean turn = turns.get(i);
+            grid.add(xs[i], ys[i], xs[i] + (turn ? s.height : s.width) + problem.cuttingLoss, ys[i] + (turn ? s.width : s.height) + problem.cuttingLoss);
+         }
+      }
+      return grid;
+   }
+
+   /**
+    * Returns the number of copies of each shape in this column, which is kept until the column changes. Columns are equal
+    * when these are.
+    */
+   public ShapeCounts counts() {
+      if(counts == null)
+         counts = ShapeCounts.of(ids, size);
+      return counts;
+   }
+
+   /**
+    * Returns a copy of this column holding only the given shapes, which should all be present in this column.
+    */
+   public Column restrictTo(ShapeCounts counts) {
+      Column c = new Column(problem, counts.total());
+      int[]  n = new int[counts.ids.length];
+      for(int i = 0; i < size; i++) {
+         int j = Arrays.binarySearch(counts.ids, ids[i]);
+         if(j >= 0 && n[j] < counts.counts[j]) {
+            n[j]++;
+            c.push(xs[i], ys[i], turns.get(i), shape(i));
+         }
+      }
+      return c;
+   }
+
+   public Shape shape(int i) {
+      return problem.shape(ids[i]);
+   }
+
+   /**
+    * Places the given shape at the given location, if it fits there.
+    */
+   public boolean push(int x, int y, boolean turn, Shape s) {
+      if(!check(x, y, turn, s))
+         return false;
+
+      if(size == xs.length) {
+         int capacity = Math.max(8, 2 * size);
+         xs  = Arrays.copyOf(xs, capacity);
+         ys  = Arrays.copyOf(ys, capacity);
+         ids = Arrays.copyOf(ids, capacity);
       }
-      return false;
+      xs[size]  = x;
+      ys[size]  = y;
+      ids[size] = s.id;
+      turns.set(size, turn);
+      size++;
+      counts = null;
+      grid().add(x, y, x + (turn ? s.height : s.width) + problem.cuttingLoss, y + (turn ? s.width : s.height) + problem.cuttingLoss);
+      return true;
+   }
+
+   /**
+    * Removes the shape that was placed last.
+    */
+   public void pop() {
+      size--;
+      counts = null;
+      Shape s = shape(size);
+      boolean turn = turns.get(size);
+      grid().remove(xs[size], ys[size], xs[size] + (turn ? s.height : s.width) + problem.cuttingLoss, ys[size] + (turn ? s.width : s.height) + problem.cuttingLoss);
    }
 
-   protected boolean check(Loc l, Shape s) {
+   protected boolean check(int x, int y, boolean turn, Shape s) {
       // Check location
-      if(l.x < 0 || l.y < 0)
+      if(x < 0 || y < 0)
          return false;
       // Check fit within resources
-      if(l.x + (l.turn ? s.height : s.width) > problem.resourceWidth || l.y + (l.turn ? s.width : s.height) > problem.resourceHeight)
+      if(x + (turn ? s.height : s.width) > problem.resourceWidth || y + (turn ? s.width : s.height) > problem.resourceHeight)
          return false;
-      // Check overlap with already included shapes
-      for(java.util.Map.Entry<Loc, Shape> e : map.entrySet()) {
-         Loc l2 = e.getKey();
-         Shape s2 = e.getValue();
-         if(l2.x - l.x  - (l.turn  ? s.height  : s.width)   < problem.cuttingLoss &&
-            l.x  - l2.x - (l2.turn ? s2.height : s2.width)  < problem.cuttingLoss &&
-            l2.y - l.y  - (l.turn  ? s.width   : s.height)  < problem.cuttingLoss &&
-            l.y  - l2.y - (l2.turn ? s2.width  : s2.height) < problem.cuttingLoss)
-            return false;
-      }
-      return true;
+      // Check overlap with already included shapes, both extended by the cutting loss along their right and top sides
+      return !grid().overlaps(x, y, x + (turn ? s.height : s.width) + problem.cuttingLoss, y + (turn ? s.width : s.height) + problem.cuttingLoss);
    }
 
    /**
-    * Returns all possible locations the given shape could be placed in this column.
+    * Writes all possible locations the given shape could be placed in this column into the given buffer, which should
+    * hold at least maxLocs() elements, and returns their number. Locations are packed as by pack(), sorted and distinct.
     */
-   public HashSet<Loc> possibleLocs(Shape s) {
-      HashSet<Loc> locs = new HashSet<Loc>();
-      Consumer<Loc> tryLoc = (Loc l) -> { if(check(l, s)) { locs.add(l); } };
+   public int possibleLocs(Shape s, long locs[]) {
+      int n = 0;
       // Check resource bounds
       int xmax  = problem.resourceWidth - s.width,
           xmaxt = problem.resourceWidth - s.height,
           ymax  = problem.resourceHeight - s.height,
           ymaxt = problem.resourceHeight - s.width;
-      tryLoc.accept(new Loc(0,     0,     false));
-      tryLoc.accept(new Loc(0,     0,     true));
-      tryLoc.accept(new Loc(xmax,  0,     false));
-      tryLoc.accept(new Loc(xmaxt, 0,     true));
-      tryLoc.accept(new Loc(0,     ymax,  false));
-      tryLoc.accept(new Loc(0,     ymaxt, true));
-      tryLoc.accept(new Loc(xmax,  ymax,  false));
-      tryLoc.accept(new Loc(xmaxt, ymaxt, true));
+      n = tryLoc(locs, n, s, 0,     0,     false);
+      n = tryLoc(locs, n, s, 0,     0,     true);
+      n = tryLoc(locs, n, s, xmax,  0,     false);
+      n = tryLoc(locs, n, s, xmaxt, 0,     true);
+      n = tryLoc(locs, n, s, 0,     ymax,  false);
+      n = tryLoc(locs, n, s, 0,     ymaxt, true);
+      n = tryLoc(locs, n, s, xmax,  ymax,  false);
+      n = tryLoc(locs, n, s, xmaxt, ymaxt, true);
       // Check sides of already present shapes
-      for(Entry<Loc, Shape> e : map.entrySet()) {
-         Loc l = e.getKey();
-         int otherWidth  = (l.turn ? e.getValue().height : e.getValue().width),
-             otherHeight = (l.turn ? e.getValue().width  : e.getValue().height);
+      for(int i = 0; i < size; i++) {
+         Shape other       = shape(i);
+         int   otherWidth  = (turns.get(i) ? other.height : other.width),
+               otherHeight = (turns.get(i) ? other.width  : other.height),
+               lx          = xs[i],
+               ly          = ys[i];
          /*
           * Try all possible locations around the other shape:
           *   b|c             d|e   y1
@@ -124,79 +194,121 @@ public class Column {
           *
           *  x1 x2           x3 x4
           */
-         int x1  = l.x - s.width  - problem.cuttingLoss,
-             x1t = l.x - s.height - problem.cuttingLoss,
-             x2  = l.x,
-             x3  = l.x + otherWidth - s.width,
-             x3t = l.x + otherWidth - s.height,
-             x4  = l.x + otherWidth + problem.cuttingLoss,
-             y1  = l.y - s.height - problem.cuttingLoss,
-             y1t = l.y - s.width  - problem.cuttingLoss,
-             y2  = l.y,
-             y3  = l.y + otherHeight - s.height,
-             y3t = l.y + otherHeight - s.width,
-             y4  = l.y + otherHeight + problem.cuttingLoss;
-         tryLoc.accept(new Loc(x1,  y2,  false)); // a
-         tryLoc.accept(new Loc(x1t, y2,  true));  // a
-         tryLoc.accept(new Loc(x1,  y1,  false)); // b
-         tryLoc.accept(new Loc(x1t, y1t, true));  // b
-         tryLoc.accept(new Loc(x2,  y1,  false)); // c
-         tryLoc.accept(new Loc(x2,  y1t, true));  // c
-         tryLoc.accept(new Loc(x3,  y1,  false)); // d
-         tryLoc.accept(new Loc(x3t, y1t, true));  // d
-         tryLoc.accept(new Loc(x4,  y1,  false)); // e
-         tryLoc.accept(new Loc(x4,  y1t, true));  // e
-         tryLoc.accept(new Loc(x4,  y2,  false)); // f
-         tryLoc.accept(new Loc(x4,  y2,  true));  // f
-         tryLoc.accept(new Loc(x4,  y3,  false)); // g
-         tryLoc.accept(new Loc(x4,  y3t, true));  // g
-         tryLoc.accept(new Loc(x4,  y4,  false)); // h
-         tryLoc.accept(new Loc(x4,  y4,  true));  // h
-         tryLoc.accept(new Loc(x3,  y4,  false)); // i
-         tryLoc.accept(new Loc(x3t, y4,  true));  // i
-         tryLoc.accept(new Loc(x2,  y4,  false)); // j
-         tryLoc.accept(new Loc(x2,  y4,  true));  // j
-         tryLoc.accept(new Loc(x1,  y4,  false)); // k
-         tryLoc.accept(new Loc(x1t, y4,  true));  // k
-         tryLoc.accept(new Loc(x1,  y3,  false)); // l
-         tryLoc.accept(new Loc(x1t, y3t, true));  // l
-
-         tryLoc.accept(new Loc(0,     y1,    false));
-         tryLoc.accept(new Loc(0,     y1t,   true));
-         tryLoc.accept(new Loc(0,     y4,    false));
-         tryLoc.accept(new Loc(0,     y4,    true));
-         tryLoc.accept(new Loc(xmax,  y1,    false));
-         tryLoc.accept(new Loc(xmaxt, y1t,   true));
-         tryLoc.accept(new Loc(xmax,  y4,    false));
-         tryLoc.accept(new Loc(xmaxt, y4,    true));
-         tryLoc.accept(new Loc(x1,    0,     false));
-         tryLoc.accept(new Loc(x1t,   0,     true));
-         tryLoc.accept(new Loc(x4,    0,     false));
-         tryLoc.accept(new Loc(x4,    0,     true));
-         tryLoc.accept(new Loc(x1,    ymax,  false));
-         tryLoc.accept(new Loc(x1t,   ymaxt, true));
-         tryLoc.accept(new Loc(x4,    ymax,  false));
-         tryLoc.accept(new Loc(x4,    ymaxt, true));
+         int x1  = lx - s.width  - problem.cuttingLoss,
+             x1t = lx - s.height - problem.cuttingLoss,
+             x2  = lx,
+             x3  = lx + otherWidth - s.width,
+             x3t = lx + otherWidth - s.height,
+             x4  = lx + otherWidth + problem.cuttingLoss,
+             y1  = ly - s.height - problem.cuttingLoss,
+             y1t = ly - s.width  - problem.cuttingLoss,
+             y2  = ly,
+             y3  = ly + otherHeight - s.height,
+             y3t = ly + otherHeight - s.width,
+             y4  = ly + otherHeight + problem.cuttingLoss;
+         n = tryLoc(locs, n, s, x1,  y2,  false); // a
+         n = tryLoc(locs, n, s, x1t, y2,  true);  // a
+         n = tryLoc(locs, n, s, x1,  y1,  false); // b
+         n = tryLoc(locs, n, s, x1t, y1t, true);  // b
+         n = tryLoc(locs, n, s, x2,  y1,  false); // c
+         n = tryLoc(locs, n, s, x2,  y1t, true);  // c
+         n = tryLoc(locs, n, s, x3,  y1,  false); // d
+         n = tryLoc(locs, n, s, x3t, y1t, true);  // d
+         n = tryLoc(locs, n, s, x4,  y1,  false); // e
+         n = tryLoc(locs, n, s, x4,  y1t, true);  // e
+         n = tryLoc(locs, n, s, x4,  y2,  false); // f
+         n = tryLoc(locs, n, s, x4,  y2,  true);  // f
+         n = tryLoc(locs, n, s, x4,  y3,  false); // g
+         n = tryLoc(locs, n, s, x4,  y3t, true);  // g
+         n = tryLoc(locs, n, s, x4,  y4,  false); // h
+         n = tryLoc(locs, n, s, x4,  y4,  true);  // h
+         n = tryLoc(locs, n, s, x3,  y4,  false); // i
+         n = tryLoc(locs, n, s, x3t, y4,  true);  // i
+         n = tryLoc(locs, n, s, x2,  y4,  false); // j
+         n = tryLoc(locs, n, s, x2,  y4,  true);  // j
+         n = tryLoc(locs, n, s, x1,  y4,  false); // k
+         n = tryLoc(locs, n, s, x1t, y4,  true);  // k
+         n = tryLoc(locs, n, s, x1,  y3,  false); // l
+         n = tryLoc(locs, n, s, x1t, y3t, true);  // l
+
+         n = tryLoc(locs, n, s, 0,     y1,    false);
+         n = tryLoc(locs, n, s, 0,     y1t,   true);
+         n = tryLoc(locs, n, s, 0,     y4,    false);
+         n = tryLoc(locs, n, s, 0,     y4,    true);
+         n = tryLoc(locs, n, s, xmax,  y1,    false);
+         n = tryLoc(locs, n, s, xmaxt, y1t,   true);
+         n = tryLoc(locs, n, s, xmax,  y4,    false);
+         n = tryLoc(locs, n, s, xmaxt, y4,    true);
+         n = tryLoc(locs, n, s, x1,    0,     false);
+         n = tryLoc(locs, n, s, x1t,   0,     true);
+         n = tryLoc(locs, n, s, x4,    0,     false);
+         n = tryLoc(locs, n, s, x4,    0,     true);
+         n = tryLoc(locs, n, s, x1,    ymax,  false);
+         n = tryLoc(locs, n, s, x1t,   ymaxt, true);
+         n = tryLoc(locs, n, s, x4,    ymax,  false);
+         n = tryLoc(locs, n, s, x4,    ymaxt, true);
+      }
+
+      // Remove duplicates
+      Arrays.sort(locs, 0, n);
+      int m = 0;
+      for(int i = 0; i < n; i++) {
+         if(m == 0 || locs[i] != locs[m - 1])
+            locs[m++] = locs[i];
       }
-      return locs;
+      return m;
+   }
+
+   protected int tryLoc(long locs[], int n, Shape s, int x, int y, boolean turn) {
+      if(check(x, y, turn, s))
+         locs[n++] = pack(x, y, turn);
+      return n;
+   }
+
+   /**
+    * Returns the maximum number of locations possibleLocs() can return for this column.
+    */
+   public int maxLocs() {
+      return 8 + 40 * size;
+   }
+
+   /**
+    * Packs a location into a single long, such that sorting packed locations sorts them by y, then x.
+    */
+   public static long pack(int x, int y, boolean turn) {
+      return ((long) y << 32) | ((long) x << 1) | (turn ? 1L : 0L);
+   }
+
+   public static int unpackX(long loc) {
+      return (int) ((loc & 0xFFFFFFFFL) >>> 1);
+   }
+
+   public static int unpackY(long loc) {
+      return (int) (loc >>> 32);
+   }
+
+   public static boolean unpackTurn(long loc) {
+      return (loc & 1L) == 1L;
    }
 
    @Override
    public boolean equals(Object o) {
-      return (o instanceof Column && ((Column) o).map.values().containsAll(map.values()) && map.values().containsAll(((Column) o).map.values()));
+      if(!(o instanceof Column))
+         return false;
+      return counts().equals(((Column) o).counts());
    }
 
    @Override
    public int hashCode() {
-      int hc = 489343;
-      for(Shape s : map.values()) {
-         hc += 42 * s.hashCode();
-      }
-      return hc;
+      return counts().hashCode();
    }
 
    @Override
    public String toString() {
-      return "Column " + map;
+      StringBuilder sb = new StringBuilder("Column {");
+      for(int i = 0; i < size; i++) {
+         sb.append(i == 0 ? "" : ", ").append(turns.get(i) ? "t" : "").append(xs[i]).append(",").append(ys[i]).append("=").append(shape(i));
+      }
+      return sb.append("}").toString();
    }
 }
@@ -1,7 +1,7 @@
 /**
  * 2D Cutting stock
  * Copyright (C) 2023 DuncanvR
- * RequiredShape.java
+ * ColumnBuilder.java
  *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -19,41 +19,162 @@
 
 package cuttingstock;
 
-import dvrlib.generic.IterableOnce;
-import dvrlib.generic.Pair;
-import dvrlib.generic.RandomOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 public class ColumnBuilder {
-   public enum Feasibility {
-      FEASIBLE,
-      INFEASIBLE,
-      UNKNOWN,
+   /**
+    * Maximum number of placements tried in a single search. Sets of shapes for which no arrangement was found within this
+    * budget are considered infeasible, though only the bounds or settle() can prove that.
+    */
+   protected final static int MaxNodes = 20000;
+
+   /**
+    * Maximum number of locations checked by a single complete search, see settle().
+    */
+   protected final static int MaxChecks = 1 << 16;
+
+   /**
+    * State of a single search for an arrangement of shapes, allocated up front so the search itself allocates nothing.
+    * It holds a buffer of possible locations per depth.
+    */
+   protected static class Search {
+      protected final Column   column;
+      protected final Problem  problem;
+      protected final Shape[]  shapes;
+      protected final long[][] locs;
+
+      protected int nodes = 0;
+
+      protected Search(Problem problem, Shape shapes[]) {
+         this.problem = problem;
+         this.shapes  = shapes;
+         this.column  = new Column(problem, shapes.length);
+         this.locs    = new long[shapes.length][];
+         for(int i = 0; i < shapes.length; i++) {
+            locs[i] = new long[8 + 40 * i];
+         }
+      }
+
+      /**
+       * Returns whether the i-th shape should be tried at the given location, pruning locations that only lead to
+       * arrangements that are mirrored, transposed or otherwise identical to others. Column.possibleLocs only places a
+       * shape against the edges of the resource or against another shape, so only cuts that map the locations it offers
+       * onto each other are safe: the first shape always lies in a corner, and the locations around any shape are the same
+       * in every mirror image.
+       */
+      protected boolean allowed(int i, long loc) {
+         int     x    = Column.unpackX(loc),
+                 y    = Column.unpackY(loc);
+         boolean turn = Column.unpackTurn(loc);
+         Shape   s    = shapes[i];
+         // Turning a square shape yields the same arrangement
+         if(turn && s.width == s.height)
+            return false;
+         if(i == 0) {
+            // Every arrangement can be mirrored such that the first shape lies in the bottom left quarter of the resource
+            if(2 * x > problem.resourceWidth - (turn ? s.height : s.width) || 2 * y > problem.resourceHeight - (turn ? s.width : s.height))
+               return false;
+            // On a square resource, every arrangement can be transposed such that the first shape is not turned
+            if(turn && problem.resourceWidth == problem.resourceHeight)
+               return false;
+         }
+         return true;
+      }
    }
 
-   public class Creation {
-      protected final HashMap<Shape, Pair<Feasibility, Creation>> nodes = new HashMap<Shape, Pair<Feasibility, Creation>>();
+   /**
+    * State of a complete search for an arrangement of shapes, which tries every location of every shape whose coordinates
+    * are normal: any arrangement can be pushed down and to the left until every shape touches either the resource's edge
+    * or another shape, so all coordinates are sums of widths or heights of other shapes, plus the cutting loss. Pushing
+    * shapes down and to the left also keeps the rules of allowed() intact, so the search misses no arrangement.
+    */
+   protected static class NormalSearch {
+      protected final Column  column;
+      protected final Problem problem;
+      protected final Shape[] shapes;
+      protected final int[]   xs, ys;
+
+      protected int checks = 0;
 
-      public Feasibility checkFeasibility(Shape[] shapes, int i) {
-         Pair<Feasibility, Creation> node = nodes.get(shapes[i]);
-         if(node == null)
-            return Feasibility.UNKNOWN;
-         if(i == shapes.length - 1)
-            return node.a;
-         if(node.a == Feasibility.INFEASIBLE)
-            return Feasibility.INFEASIBLE;
-         return node.b.checkFeasibility(shapes, i + 1);
+      protected NormalSearch(Problem problem, Shape shapes[]) {
+         this.problem = problem;
+         this.shapes  = shapes;
+         this.column  = new Column(problem, shapes.length);
+         this.xs      = normalCoordinates(problem.resourceWidth);
+         this.ys      = normalCoordinates(problem.resourceHeight);
+      }
+
+      /**
+       * Returns the normal coordinates up to the given maximum, in ascending order.
+       */
+      protected int[] normalCoordinates(int max) {
+         boolean[] normal = new boolean[max + 1];
+         normal[0] = true;
+         for(Shape s : shapes) {
+            for(int c = max; c >= 0; c--) {
+               if(normal[c]) {
+                  if(c + s.width + problem.cuttingLoss <= max)
+                     normal[c + s.width + problem.cuttingLoss] = true;
+                  if(c + s.height + problem.cuttingLoss <= max)
+                     normal[c + s.height + problem.cuttingLoss] = true;
+               }
+            }
+         }
+         return IntStream.rangeClosed(0, max).filter((int c) -> normal[c]).toArray();
+      }
+
+      /**
+       * Returns whether the i-th shape should be tried at the given location, pruning locations that only lead to
+       * arrangements equivalent to others.
+       */
+      protected boolean allowed(int i, int x, int y, boolean turn) {
+         Shape s = shapes[i];
+         // Turning a square shape yields the same arrangement
+         if(turn && s.width == s.height)
+            return false;
+         // Identical shapes are interchangeable, so they are placed in ascending order of their locations
+         if(i > 0 && shapes[i - 1] == s && Column.pack(x, y, turn) <= Column.pack(column.xs[i - 1], column.ys[i - 1], column.turns.get(i - 1)))
+            return false;
+         // Unless it has copies, whose order would have to change along, the first shape can be mirrored into the bottom
+         // left quarter of the resource, and on a square resource transposed such that it is not turned
+         if(i == 0 && (shapes.length == 1 || shapes[1] != s)) {
+            if(2 * x > problem.resourceWidth - (turn ? s.height : s.width) || 2 * y > problem.resourceHeight - (turn ? s.width : s.height))
+               return false;
+            if(turn && problem.resourceWidth == problem.resourceHeight)
+               return false;
+         }
+         return true;
       }
    }
 
-   protected final Creation emptyCreation = new Creation();
+   /**
+    * Orders shapes from large to small, keeping identical shapes together.
+    */
+   protected final static Comparator<Shape> LargestFirst = Comparator.comparing(Shape::getSize).reversed().thenComparingInt((Shape s) -> s.id);
+
+   protected final FeasibilityCache cache;
+   // Sets of shapes for which the complete search ran out of checks, so settle() does not try them again
+   protected final Set<ShapeCounts> unsettled = ConcurrentHashMap.newKeySet();
+
+   public ColumnBuilder() {
+      this(new FeasibilityCache());
+   }
+
+   public ColumnBuilder(FeasibilityCache cache) {
+      this.cache = cache;
+   }
 
    /**
-    * Tries to arrange all the given shapes into new columns and returns those.
+    * Tries to arrange at least one and at most the required number of copies of each of the given shapes into new columns,
+    * and returns those. A single copy of each shape is arranged first, after which every column is extended with as many
+    * additional copies as fit, favouring a different shape each time, so all columns are maximal.
     */
    public Column[] buildColumns(Problem problem, RequiredShape shapes[]) {
       Logger.debug("   Attempting to construct columns for:").println();
@@ -61,82 +182,209 @@ public class ColumnBuilder {
          Logger.debug("      " + s).println();
       }
 
-      ArrayList<Column> cs = new ArrayList<Column>();
-      for(Shape[] ss : explodeRequiredShapes(shapes)) {
-         Feasibility f = emptyCreation.checkFeasibility(ss, 0);
-         if(f != Feasibility.INFEASIBLE) {
-            Logger.debug("      Attempting with #" + ss[0].id).print();
-            for(int i = 1; i < ss.length; i++) {
-               Logger.debug("," + ss[i].id).print();
-            }
-            Logger.debug("").println();
+      Column base = buildColumn(problem, Arrays.stream(shapes).map(RequiredShape::shape).toArray(Shape[]::new));
+      if(base == null) {
+         Logger.debug("      Created no columns").println();
+         return new Column[0];
+      }
 
-            Column c = new Column(problem);
-            if(buildColumn(emptyCreation, c, ss, 0))
-               cs.add(c);
-         }
+      int[] limits = new int[problem.shapes.size()];
+      for(RequiredShape s : shapes) {
+         limits[s.shape().id - 1] = s.count();
+      }
+      LinkedHashMap<ShapeCounts, Column> cs = new LinkedHashMap<ShapeCounts, Column>();
+      for(int i = 0; i < shapes.length; i++) {
+         Column c = extend(problem, base, limits, shapes[i].shape());
+         cs.putIfAbsent(c.counts(), c);
       }
       Logger.debug("      Created " + cs.size() + " column" + (cs.size() == 1 ? "" : "s")).println();
-      return cs.toArray(new Column[cs.size()]);
+      return cs.values().toArray(new Column[cs.size()]);
    }
 
-   protected IterableOnce<Shape[]> explodeRequiredShapes(RequiredShape shapes[]) {
-      ArrayList<ArrayList<Shape>> sets = new ArrayList<ArrayList<Shape>>();
-      sets.add(new ArrayList<Shape>());
+   /**
+    * Returns a copy of the given column to which copies of shapes are added, at the lowest location they fit, until no more
+    * fit or the column holds limits[id - 1] copies of every shape. The favoured shape is added first, then all others
+    * from large to small.
+    */
+   public Column extend(Problem problem, Column column, int limits[], Shape favoured) {
+      Column c    = new Column(column);
+      int[]  left = limits.clone();
+      for(int i = 0; i < c.size(); i++) {
+         left[c.ids[i] - 1]--;
+      }
+      ArrayList<Shape> order = new ArrayList<Shape>();
+      for(RequiredShape rs : problem.shapes) {
+         if(left[rs.shape().id - 1] > 0)
+            order.add(rs.shape());
+      }
+      order.sort(LargestFirst);
+      if(favoured != null && order.remove(favoured))
+         order.add(0, favoured);
 
-      for(int i = 0; i < shapes.length; i++) {
-         for(ArrayList<Shape> set : sets) {
-            set.add(shapes[i].shape());
+      long[] locs = new long[0];
+      for(Shape s : order) {
+         while(left[s.id - 1] > 0) {
+            if(locs.length < c.maxLocs())
+               locs = new long[2 * c.maxLocs()];
+            if(c.possibleLocs(s, locs) == 0)
+               break;
+            c.push(Column.unpackX(locs[0]), Column.unpackY(locs[0]), Column.unpackTurn(locs[0]), s);
+            left[s.id - 1]--;
          }
+      }
+      if(c.size() > column.size()) {
+         // The column has changed, so its cuts no longer apply, but its shapes are known to fit together now
+         c.cuts = null;
+         cache.putFeasible(c.counts(), c);
+      }
+      return c;
+   }
 
-         if(shapes[i].count() > 1) {
-            ArrayList<ArrayList<Shape>> extraSets = new ArrayList<ArrayList<Shape>>();
-            for(int j = 1; j < shapes[i].count(); j++) {
-               for(ArrayList<Shape> s : sets) {
-                  ArrayList<Shape> clone = new ArrayList<Shape>();
-                  clone.addAll(s);
-                  for(int k = 0; k < j; k++) {
-                     clone.add(shapes[i].shape());
-                  }
-                  extraSets.add(clone);
-               }
-            }
-            sets.addAll(extraSets);
+   /**
+    * Tries to arrange exactly the given shapes into a single column, and returns it, or null if that failed.
+    */
+   public Column buildColumn(Problem problem, Shape shapes[]) {
+      Shape[] ss = Arrays.stream(shapes)
+                         .sorted(LargestFirst)
+                         .toArray(Shape[]::new);
+      return (ss.length == 0 ? null : arrange(problem, ss));
+   }
+
+   /**
+    * Arranges the given shapes, sorted by LargestFirst, using the cache where possible and recording the outcome otherwise.
+    */
+   protected Column arrange(Problem problem, Shape ss[]) {
+      ShapeCounts key = ShapeCounts.of(ss);
+      FeasibilityCache.Lookup known = cache.lookup(key);
+      switch(known.feasibility) {
+         case FEASIBLE:
+            return known.column;
+         case INFEASIBLE:
+            return null;
+         default:
+            break;
+      }
+
+      Logger.debug("      Attempting with " + key).println();
+      boolean fits = Bounds.mayFit(problem, ss);
+      if(fits) {
+         Search search = new Search(problem, ss);
+         if(buildColumn(search, 0)) {
+            cache.putFeasible(key, search.column);
+            return search.column;
+         }
+      }
+      // The search only tries the locations next to shapes placed before, so failing it proves nothing, unlike the bounds
+      cache.putInfeasible(key, !fits);
+      return null;
+   }
+
+   /**
+    * Settles whether the given shapes fit on a resource when that is not known yet, by a complete search over the normal
+    * patterns, and returns their arrangement if they do, or null otherwise. Afterwards, provenInfeasible() tells whether
+    * they do not fit or the search ran out of checks.
+    */
+   public Column settle(Problem problem, Shape shapes[]) {
+      Shape[] ss = Arrays.stream(shapes)
+                         .sorted(LargestFirst)
+                         .toArray(Shape[]::new);
+      ShapeCounts             key   = ShapeCounts.of(ss);
+      FeasibilityCache.Lookup known = cache.lookup(key);
+      if(known.feasibility == FeasibilityCache.Feasibility.FEASIBLE)
+         return known.column;
+      if(ss.length == 0 || known.proven || unsettled.contains(key))
+         return null;
+
+      Logger.debug("      Settling " + key).println();
+      if(Bounds.mayFit(problem, ss)) {
+         NormalSearch search = new NormalSearch(problem, ss);
+         if(arrangeNormally(search, 0)) {
+            cache.putFeasible(key, search.column);
+            return search.column;
+         }
+         if(search.checks > MaxChecks) {
+            unsettled.add(key);
+            return null;
          }
       }
+      cache.putInfeasible(key, true);
+      return null;
+   }
 
-      return new IterableOnce<Shape[]>(sets.stream()
-                                           .map((ArrayList<Shape> ss) -> { return ss.stream()
-                                                                                    .sorted(Comparator.comparing(Shape::getSize).reversed())
-                                                                                    .toArray(Shape[]::new); })
-                                           .sorted(Comparator.comparing(java.lang.reflect.Array::getLength).reversed())
-                                           .iterator());
+   /**
+    * Returns whether the given shapes are known not to fit on a resource, as opposed to merely no arrangement having been
+    * found for them.
+    */
+   public boolean provenInfeasible(Shape shapes[]) {
+      FeasibilityCache.Lookup known = cache.lookup(ShapeCounts.of(shapes));
+      return (known.feasibility == FeasibilityCache.Feasibility.INFEASIBLE && known.proven);
    }
 
-   protected boolean buildColumn(Creation creation, Column column, Shape shapes[], int i) {
+   protected boolean buildColumn(Search search, int i) {
+      Column  column = search.column;
+      Shape[] shapes = search.shapes;
       if(i >= shapes.length)
          return true;
+      if(++search.nodes > MaxNodes)
+         return false;
 
-      Pair<Feasibility, Creation> node = creation.nodes.get(shapes[i]);
-      if(node == null || node.a != Feasibility.INFEASIBLE) {
-         Collection<Column.Loc> locs = column.possibleLocs(shapes[i]);
-         if(locs.size() > 0) {
-            if(node == null || node.a == Feasibility.UNKNOWN) {
-               node = new Pair<>(Feasibility.FEASIBLE, new Creation());
-               creation.nodes.put(shapes[i], node);
-            }
-            for(Column.Loc l : new RandomOrder<Column.Loc>(locs)) {
-               column.add(l, shapes[i]);
-               if(buildColumn(node.b, column, shapes, i + 1))
+      long[] locs = search.locs[i];
+      int    n    = 0;
+      for(int j = 0, m = column.possibleLocs(shapes[i], locs); j < m; j++) {
+         if(search.allowed(i, locs[j]))
+            locs[n++] = locs[j];
+      }
+      shuffle(locs, n);
+      for(int j = 0; j < n; j++) {
+         column.push(Column.unpackX(locs[j]), Column.unpackY(locs[j]), Column.unpackTurn(locs[j]), shapes[i]);
+         if(buildColumn(search, i + 1))
+            return true;
+         column.pop();
+      }
+      return false;
+   }
+
+   protected boolean arrangeNormally(NormalSearch search, int i) {
+      Column  column = search.column;
+      Shape[] shapes = search.shapes;
+      if(i >= shapes.length)
+         return true;
+
+      Shape s = shapes[i];
+      for(int t = 0; t < 2; t++) {
+         boolean turn   = (t == 1);
+         int     width  = (turn ? s.height : s.width),
+                 height = (turn ? s.width : s.height);
+         for(int j = 0; j < search.ys.length && search.ys[j] + height <= search.problem.resourceHeight; j++) {
+            for(int k = 0; k < search.xs.length && search.xs[k] + width <= search.problem.resourceWidth; k++) {
+               int x = search.xs[k],
+                   y = search.ys[j];
+               if(!search.allowed(i, x, y, turn))
+                  continue;
+               if(++search.checks > MaxChecks)
+                  return false;
+               if(!column.check(x, y, turn, s))
+                  continue;
+               column.push(x, y, turn, s);
+               if(arrangeNormally(search, i + 1))
                   return true;
-               else
-                  column.map.remove(l);
+               column.pop();
             }
          }
-         else {
-            creation.nodes.put(shapes[i], new Pair<>(Feasibility.INFEASIBLE, null));
-         }
       }
       return false;
    }
+
+   /**
+    * Shuffles the first n elements of the given array in place.
+    */
+   protected static void shuffle(long a[], int n) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for(int i = n - 1; i > 0; i--) {
+         int  j = random.nextInt(i + 1);
+         long t = a[i];
+         a[i] = a[j];
+         a[j] = t;
+      }
+   }
 }
@@ -0,0 +1,115 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * CutTree.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+
+/**
+ * A pattern of guillotine cuts: either a single shape, or a sequence of parts separated by edge-to-edge cuts.
+ */
+public class CutTree {
+   protected final ArrayList<CutTree> parts = new ArrayList<CutTree>();
+   protected final boolean            turn, vertical;
+   protected final int                cuttingLoss;
+   protected final Shape              shape;
+
+   protected int width = 0, height = 0;
+
+   /**
+    * Creates a leaf holding the given shape, possibly turned.
+    */
+   public CutTree(Shape shape, boolean turn) {
+      this.shape       = shape;
+      this.turn        = turn;
+      this.vertical    = false;
+      this.cuttingLoss = 0;
+      this.width       = (turn ? shape.height : shape.width);
+      this.height      = (turn ? shape.width  : shape.height);
+   }
+
+   /**
+    * Creates an empty node whose parts will be separated by vertical cuts, i.e. placed side by side, or by horizontal
+    * cuts, i.e. placed on top of each other.
+    */
+   public CutTree(boolean vertical, int cuttingLoss) {
+      this.shape       = null;
+      this.turn        = false;
+      this.vertical    = vertical;
+      this.cuttingLoss = cuttingLoss;
+   }
+
+   public void add(CutTree part) {
+      int loss = (parts.isEmpty() ? 0 : cuttingLoss);
+      if(vertical) {
+         width += loss + part.width;
+         height = Math.max(height, part.height);
+      }
+      else {
+         width   = Math.max(width, part.width);
+         height += loss + part.height;
+      }
+      parts.add(part);
+   }
+
+   public boolean isEmpty() {
+      return (shape == null && parts.isEmpty());
+   }
+
+   /**
+    * Returns the sum of the values of all shapes in this tree, indexed by shape id.
+    */
+   public double value(double values[]) {
+      if(shape != null)
+         return values[shape.id - 1];
+      double v = 0d;
+      for(CutTree p : parts) {
+         v += p.value(values);
+      }
+      return v;
+   }
+
+   /**
+    * Places all shapes in this tree into the given column, with the bottom left corner of this tree at the given location.
+    */
+   public boolean place(Column column, int x, int y) {
+      if(shape != null)
+         return column.push(x, y, turn, shape);
+      for(CutTree p : parts) {
+         if(!p.place(column, x, y))
+            return false;
+         if(vertical)
+            x += p.width + cuttingLoss;
+         else
+            y += p.height + cuttingLoss;
+      }
+      return true;
+   }
+
+   @Override
+   public String toString() {
+      if(shape != null)
+         return (turn ? "t" : "") + shape.id;
+      StringBuilder sb = new StringBuilder(vertical ? "[" : "(");
+      for(int i = 0; i < parts.size(); i++) {
+         sb.append(i == 0 ? "" : vertical ? " | " : " / ").append(parts.get(i));
+      }
+      return sb.append(vertical ? "]" : ")").toString();
+   }
+}
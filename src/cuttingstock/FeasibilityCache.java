@@ -0,0 +1,243 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * FeasibilityCache.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Remembers which multisets of shapes could or could not be arranged on a resource, along with an arrangement of the
+ * feasible ones. Any subset of a feasible multiset is feasible too, and any superset of an infeasible one is infeasible;
+ * a known feasible superset takes precedence over an infeasible subset, as infeasibility may only mean no arrangement was
+ * found in time. Entries are indexed by the shapes they hold, so these lookups only visit entries that share a shape with
+ * the multiset looked up. The cache is safe for concurrent use, and drops the least recently used entries once it holds
+ * too many.
+ */
+public class FeasibilityCache {
+   public enum Feasibility {
+      FEASIBLE,
+      INFEASIBLE,
+      UNKNOWN,
+   }
+
+   /**
+    * The outcome of a single lookup: the feasibility of a multiset, an arrangement of exactly its shapes if it is
+    * feasible, and whether its infeasibility was proven rather than merely no arrangement found.
+    */
+   public static class Lookup {
+      public final Feasibility feasibility;
+      public final Column      column;
+      public final boolean     proven;
+
+      protected Lookup(Feasibility feasibility, Column column, boolean proven) {
+         this.feasibility = feasibility;
+         this.column      = column;
+         this.proven      = proven;
+      }
+   }
+
+   protected static class Entry {
+      protected final ShapeCounts key;
+      protected final Column      column;
+      protected final boolean     proven;
+      protected volatile long     used;
+
+      protected Entry(ShapeCounts key, Column column, boolean proven) {
+         this.key    = key;
+         this.column = column;
+         this.proven = proven;
+      }
+   }
+
+   protected final static Lookup Unknown          = new Lookup(Feasibility.UNKNOWN, null, false),
+                                 Infeasible       = new Lookup(Feasibility.INFEASIBLE, null, false),
+                                 ProvenInfeasible = new Lookup(Feasibility.INFEASIBLE, null, true);
+
+   public final static int DefaultCapacity = 1 << 14;
+
+   protected final ConcurrentHashMap<ShapeCounts, Entry>  feasible          = new ConcurrentHashMap<ShapeCounts, Entry>(),
+                                                          infeasible        = new ConcurrentHashMap<ShapeCounts, Entry>();
+   // Feasible entries are listed under every shape they hold, infeasible ones under the shape with the lowest id only
+   protected final ConcurrentHashMap<Integer, Set<Entry>> feasibleByShape   = new ConcurrentHashMap<Integer, Set<Entry>>(),
+                                                          infeasibleByShape = new ConcurrentHashMap<Integer, Set<Entry>>();
+   protected final AtomicLong                             clock             = new AtomicLong();
+   protected final ReentrantLock                          evicting          = new ReentrantLock();
+   protected final int                                    capacity;
+
+   public FeasibilityCache() {
+      this(DefaultCapacity);
+   }
+
+   public FeasibilityCache(int capacity) {
+      this.capacity = capacity;
+   }
+
+   public Feasibility feasibility(ShapeCounts key) {
+      return lookup(key).feasibility;
+   }
+
+   /**
+    * Returns what is known about the given multiset, with an arrangement of exactly its shapes if it is feasible.
+    */
+   public Lookup lookup(ShapeCounts key) {
+      Entry e = find(key);
+      if(e == null)
+         return Unknown;
+      if(e.column == null)
+         return (e.proven ? ProvenInfeasible : Infeasible);
+      return new Lookup(Feasibility.FEASIBLE, (e.key.equals(key) ? new Column(e.column) : e.column.restrictTo(key)), true);
+   }
+
+   public void putFeasible(ShapeCounts key, Column column) {
+      Entry e = new Entry(key, new Column(column), true);
+      put(feasible, e);
+      for(int id : key.ids) {
+         feasibleByShape.computeIfAbsent(id, (Integer i) -> ConcurrentHashMap.newKeySet()).add(e);
+      }
+      evict();
+   }
+
+   /**
+    * Records that the given multiset does not fit, which is proven if no arrangement exists rather than none was found.
+    */
+   public void putInfeasible(ShapeCounts key, boolean proven) {
+      Entry e = new Entry(key, null, proven);
+      put(infeasible, e);
+      infeasibleByShape.computeIfAbsent(key.ids[0], (Integer i) -> ConcurrentHashMap.newKeySet()).add(e);
+      evict();
+   }
+
+   /**
+    * Passes every known multiset to the given action, along with its arrangement, or null if it is infeasible.
+    */
+   public void forEach(BiConsumer<ShapeCounts, Column> action) {
+      for(Entry e : feasible.values()) {
+         action.accept(e.key, e.column);
+      }
+      for(Entry e : infeasible.values()) {
+         action.accept(e.key, null);
+      }
+   }
+
+   public int size() {
+      return feasible.size() + infeasible.size();
+   }
+
+   protected Entry find(ShapeCounts key) {
+      Entry e = feasible.get(key);
+      if(e == null)
+         e = findSuperset(key);
+      if(e == null)
+         e = infeasible.get(key);
+      if(e == null)
+         e = findSubset(key);
+      if(e != null)
+         e.used = clock.incrementAndGet();
+      return e;
+   }
+
+   /**
+    * Returns a feasible entry holding at least the given shapes, looking only at those listed under the least common of
+    * its shapes.
+    */
+   protected Entry findSuperset(ShapeCounts key) {
+      Set<Entry> least = null;
+      for(int id : key.ids) {
+         Set<Entry> es = feasibleByShape.get(id);
+         if(es == null)
+            return null;
+         if(least == null || es.size() < least.size())
+            least = es;
+      }
+      if(least != null) {
+         for(Entry e : least) {
+            if(e.key.contains(key))
+               return e;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Returns an infeasible entry holding no more than the given shapes, looking only at those whose lowest id is among
+    * them.
+    */
+   protected Entry findSubset(ShapeCounts key) {
+      for(int id : key.ids) {
+         Set<Entry> es = infeasibleByShape.get(id);
+         if(es == null)
+            continue;
+         for(Entry e : es) {
+            if(key.contains(e.key))
+               return e;
+         }
+      }
+      return null;
+   }
+
+   protected void put(ConcurrentHashMap<ShapeCounts, Entry> map, Entry e) {
+      e.used = clock.incrementAndGet();
+      Entry old = map.put(e.key, e);
+      if(old != null)
+         unindex(old);
+   }
+
+   protected void unindex(Entry e) {
+      if(e.column == null) {
+         Set<Entry> es = infeasibleByShape.get(e.key.ids[0]);
+         if(es != null)
+            es.remove(e);
+      }
+      else {
+         for(int id : e.key.ids) {
+            Set<Entry> es = feasibleByShape.get(id);
+            if(es != null)
+               es.remove(e);
+         }
+      }
+   }
+
+   /**
+    * Drops the least recently used entries, making room for an eighth of the capacity.
+    */
+   protected void evict() {
+      if(size() <= capacity || !evicting.tryLock())
+         return;
+      try {
+         ArrayList<Entry> entries = new ArrayList<Entry>(feasible.values());
+         entries.addAll(infeasible.values());
+         if(entries.size() <= capacity)
+            return;
+         entries.sort(Comparator.comparingLong((Entry e) -> e.used));
+         for(Entry e : entries.subList(0, entries.size() - capacity + capacity / 8)) {
+            if((e.column == null ? infeasible : feasible).remove(e.key, e))
+               unindex(e);
+         }
+      }
+      finally {
+         evicting.unlock();
+      }
+   }
+}
@@ -0,0 +1,325 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * GuillotinePricer.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Generates columns that can be cut using only edge-to-edge cuts, in either two or three stages.
+ * The resource is cut horizontally into strips, which are cut vertically into stacks; with two stages a stack holds a
+ * single shape, with three stages the stacks are cut horizontally once more. Each level is a knapsack problem over the
+ * heights or widths of the level below it, solved by dynamic programming.
+ */
+public class GuillotinePricer implements Pricer {
+   protected final static double Epsilon = 1e-9;
+
+   protected final Problem problem;
+   protected final int     stages, sheetWidth, sheetHeight;
+
+   protected double[] values;
+   protected int[]    remaining;
+   protected int[]    itemShape, itemWidth, itemHeight;
+   protected boolean  itemTurn[];
+
+   public GuillotinePricer(Problem problem, int stages) {
+      if(stages != 2 && stages != 3)
+         throw new IllegalArgumentException("Guillotine patterns need either 2 or 3 stages");
+      this.problem = problem;
+      this.stages  = stages;
+      // Every part needs its own size plus the cutting loss, except for the last one, hence the enlarged resource
+      this.sheetWidth  = problem.resourceWidth  + problem.cuttingLoss;
+      this.sheetHeight = problem.resourceHeight + problem.cuttingLoss;
+   }
+
+   //--- cuttingstock.Pricer
+   @Override
+   public Column[] price(double duals[], int max, Set<ShapeCounts> excluded) {
+      // The best plan for the duals comes first; planning again without each of its shapes in turn, the most valuable one
+      // first, gives up to max different plans
+      LinkedHashMap<ShapeCounts, Column> found = new LinkedHashMap<ShapeCounts, Column>();
+      Column                             best  = buildColumn(duals);
+      offer(found, best, duals, excluded);
+      if(best != null) {
+         Integer[] order = Arrays.stream(best.counts().ids)
+                                 .boxed()
+                                 .sorted(Comparator.comparingDouble((Integer id) -> -duals[id - 1]))
+                                 .toArray(Integer[]::new);
+         for(int i = 0; i < order.length && found.size() < max; i++) {
+            double[] values = duals.clone();
+            values[order[i] - 1] = 0d;
+            offer(found, buildColumn(values), duals, excluded);
+         }
+      }
+      return found.values()
+                  .stream()
+                  .sorted(Comparator.comparingDouble((Column c) -> -c.cuts.value(duals)))
+                  .limit(Math.max(0, max))
+                  .toArray(Column[]::new);
+   }
+
+   @Override
+   public double bound() {
+      // The strips are planned greedily, so their value does not bound that of all guillotine patterns
+      return Double.POSITIVE_INFINITY;
+   }
+
+   @Override
+   public boolean exhaustive() {
+      return false;
+   }
+
+   /**
+    * Adds the given column to the found ones, unless it is null, excluded, found already, or not improving for the duals.
+    */
+   protected void offer(LinkedHashMap<ShapeCounts, Column> found, Column c, double duals[], Set<ShapeCounts> excluded) {
+      if(c != null && c.cuts.value(duals) > 1d + Epsilon && !excluded.contains(c.counts()))
+         found.putIfAbsent(c.counts(), c);
+   }
+
+   /**
+    * Returns the most valuable column that could be cut for the given values per shape, or null if there is none.
+    */
+   public Column buildColumn(double values[]) {
+      CutTree tree = buildTree(values);
+      if(tree == null)
+         return null;
+
+      Column c = new Column(problem);
+      if(!tree.place(c, 0, 0))
+         throw new IllegalStateException("Guillotine pattern does not fit: " + tree);
+      c.cuts = tree;
+      return c;
+   }
+
+   protected CutTree buildTree(double values[]) {
+      this.values    = values;
+      this.remaining = new int[problem.shapes.size()];
+      for(int i = 0; i < remaining.length; i++) {
+         remaining[i] = (values[i] > Epsilon ? problem.shapes.get(i).count() : 0);
+      }
+
+      // Collect all shapes with a value in both orientations
+      ArrayList<int[]> items = new ArrayList<int[]>();
+      for(int i = 0; i < remaining.length; i++) {
+         Shape s = problem.shapes.get(i).shape();
+         if(remaining[i] > 0 && s.width <= problem.resourceWidth && s.height <= problem.resourceHeight)
+            items.add(new int[]{ i, s.width, s.height, 0 });
+         if(remaining[i] > 0 && s.width != s.height && s.height <= problem.resourceWidth && s.width <= problem.resourceHeight)
+            items.add(new int[]{ i, s.height, s.width, 1 });
+      }
+      if(items.isEmpty())
+         return null;
+      itemShape  = items.stream().mapToInt((int[] it) -> it[0]).toArray();
+      itemWidth  = items.stream().mapToInt((int[] it) -> it[1]).toArray();
+      itemHeight = items.stream().mapToInt((int[] it) -> it[2]).toArray();
+      itemTurn   = new boolean[items.size()];
+      for(int i = 0; i < itemTurn.length; i++) {
+         itemTurn[i] = (items.get(i)[3] == 1);
+      }
+
+      int[]   heights     = IntStream.of(itemHeight).distinct().sorted().toArray(),
+              stripCounts = new int[heights.length],
+              stripBounds = new int[heights.length],
+              stripWeight = IntStream.of(heights).map((int h) -> h + problem.cuttingLoss).toArray();
+      CutTree sheet       = new CutTree(false, problem.cuttingLoss);
+      for(int capacity = sheetHeight; ; ) {
+         // Determine the value of a strip for every height a shape can have, and choose the best combination of strips
+         double[] stripValues = stripValues(heights);
+         for(int s = 0; s < heights.length; s++) {
+            stripBounds[s] = capacity / stripWeight[s];
+         }
+         knapsack(stripWeight, stripValues, stripBounds, capacity, stripCounts);
+
+         // The strips share the shapes that are still needed, so only fill the most valuable one and plan the rest again
+         int best = -1;
+         for(int s = 0; s < heights.length; s++) {
+            if(stripCounts[s] > 0 && (best < 0 || stripValues[s] > stripValues[best]))
+               best = s;
+         }
+         if(best < 0)
+            break;
+         CutTree strip = buildStrip(heights[best]);
+         if(strip.isEmpty())
+            break;
+         sheet.add(strip);
+         capacity -= strip.height + problem.cuttingLoss;
+      }
+      return (sheet.isEmpty() ? null : sheet);
+   }
+
+   /**
+    * Returns the value of the best strip of each of the given heights, using the shapes that are still needed.
+    */
+   protected double[] stripValues(int heights[]) {
+      double[] vs = new double[heights.length];
+      if(stages == 2) {
+         for(int s = 0; s < heights.length; s++) {
+            vs[s] = knapsack(filter(Integer.MAX_VALUE, heights[s]), true, sheetWidth, null);
+         }
+      }
+      else {
+         // The best stack of each width is found for all heights at once
+         int[]      widths = IntStream.of(itemWidth).distinct().sorted().toArray();
+         double[][] stacks = new double[widths.length][];
+         for(int w = 0; w < widths.length; w++) {
+            stacks[w] = stackValues(filter(widths[w], Integer.MAX_VALUE), sheetHeight);
+         }
+         for(int s = 0; s < heights.length; s++) {
+            double[] stackValues = new double[widths.length];
+            for(int w = 0; w < widths.length; w++) {
+               stackValues[w] = stacks[w][heights[s] + problem.cuttingLoss];
+            }
+            vs[s] = knapsack(stackWeights(widths), stackValues, stackBounds(widths), sheetWidth, null);
+         }
+      }
+      return vs;
+   }
+
+   protected CutTree buildStrip(int height) {
+      CutTree strip = new CutTree(true, problem.cuttingLoss);
+      if(stages == 2) {
+         int[] items = filter(Integer.MAX_VALUE, height);
+         int[] counts = new int[items.length];
+         knapsack(items, true, sheetWidth, counts);
+         addItems(strip, items, counts);
+      }
+      else {
+         int[]    widths      = IntStream.of(itemWidth).distinct().sorted().toArray(),
+                  stackCounts = new int[widths.length];
+         double[] stackValues = new double[widths.length];
+         for(int w = 0; w < widths.length; w++) {
+            stackValues[w] = stackValues(filter(widths[w], height), height + problem.cuttingLoss)[height + problem.cuttingLoss];
+         }
+         knapsack(stackWeights(widths), stackValues, stackBounds(widths), sheetWidth, stackCounts);
+         for(int w = widths.length - 1; w >= 0; w--) {
+            for(int t = 0; t < stackCounts[w]; t++) {
+               int[] items = filter(widths[w], height);
+               int[] counts = new int[items.length];
+               knapsack(items, false, height + problem.cuttingLoss, counts);
+               CutTree stack = new CutTree(false, problem.cuttingLoss);
+               addItems(stack, items, counts);
+               if(!stack.isEmpty())
+                  strip.add(stack);
+            }
+         }
+      }
+      return strip;
+   }
+
+   protected double[] stackValues(int items[], int capacity) {
+      double[] best = new double[capacity + 1];
+      knapsack(items, false, capacity, null, best);
+      return best;
+   }
+
+   protected int[] stackWeights(int widths[]) {
+      return IntStream.of(widths).map((int w) -> w + problem.cuttingLoss).toArray();
+   }
+
+   protected int[] stackBounds(int widths[]) {
+      return IntStream.of(widths).map((int w) -> sheetWidth / (w + problem.cuttingLoss)).toArray();
+   }
+
+   /**
+    * Returns the items that are still needed and fit within the given width and height.
+    */
+   protected int[] filter(int width, int height) {
+      return IntStream.range(0, itemShape.length)
+                      .filter((int i) -> remaining[itemShape[i]] > 0 && itemWidth[i] <= width && itemHeight[i] <= height)
+                      .toArray();
+   }
+
+   protected void addItems(CutTree node, int items[], int counts[]) {
+      for(int i = 0; i < items.length; i++) {
+         int s = itemShape[items[i]];
+         for(int t = 0; t < counts[i] && remaining[s] > 0; t++, remaining[s]--) {
+            node.add(new CutTree(problem.shapes.get(s).shape(), itemTurn[items[i]]));
+         }
+      }
+   }
+
+   protected double knapsack(int items[], boolean alongWidth, int capacity, int counts[]) {
+      return knapsack(items, alongWidth, capacity, counts, new double[capacity + 1]);
+   }
+
+   protected double knapsack(int items[], boolean alongWidth, int capacity, int counts[], double best[]) {
+      int[]    weights = new int[items.length],
+               bounds  = new int[items.length];
+      double[] vs      = new double[items.length];
+      for(int i = 0; i < items.length; i++) {
+         weights[i] = (alongWidth ? itemWidth[items[i]] : itemHeight[items[i]]) + problem.cuttingLoss;
+         bounds[i]  = remaining[itemShape[items[i]]];
+         vs[i]      = values[itemShape[items[i]]];
+      }
+      return knapsack(weights, vs, bounds, capacity, counts, best);
+   }
+
+   protected static double knapsack(int weights[], double values[], int bounds[], int capacity, int counts[]) {
+      return knapsack(weights, values, bounds, capacity, counts, new double[capacity + 1]);
+   }
+
+   /**
+    * Solves a bounded knapsack problem, filling best with the highest value attainable for every capacity up to the given
+    * one. If counts is not null, it receives the number of copies of each item in the best solution for the full capacity.
+    * Bounded items are split into parts of 1, 2, 4, ... copies, which turns this into a 0-1 knapsack problem.
+    */
+   protected static double knapsack(int weights[], double values[], int bounds[], int capacity, int counts[], double best[]) {
+      ArrayList<int[]> parts = new ArrayList<int[]>();
+      for(int i = 0; i < weights.length; i++) {
+         int bound = Math.min(bounds[i], capacity / Math.max(1, weights[i]));
+         for(int m = 1; bound > 0; m = Math.min(2 * m, bound)) {
+            parts.add(new int[]{ i, m });
+            bound -= m;
+         }
+      }
+
+      Arrays.fill(best, 0d);
+      boolean[][] taken = (counts == null ? null : new boolean[parts.size()][capacity + 1]);
+      for(int p = 0; p < parts.size(); p++) {
+         int    i = parts.get(p)[0],
+                m = parts.get(p)[1],
+                w = m * weights[i];
+         double v = m * values[i];
+         for(int c = capacity; c >= w; c--) {
+            if(best[c - w] + v > best[c] + Epsilon) {
+               best[c] = best[c - w] + v;
+               if(taken != null)
+                  taken[p][c] = true;
+            }
+         }
+      }
+
+      if(counts != null) {
+         Arrays.fill(counts, 0);
+         for(int p = parts.size() - 1, c = capacity; p >= 0; p--) {
+            if(taken[p][c]) {
+               counts[parts.get(p)[0]] += parts.get(p)[1];
+               c -= parts.get(p)[1] * weights[parts.get(p)[0]];
+            }
+         }
+      }
+      return best[capacity];
+   }
+}
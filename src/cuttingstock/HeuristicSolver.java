@@ -0,0 +1,176 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * HeuristicSolver.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Solves a problem without any lp: the best of the greedy packings is improved by ruin and recreate, i.e. repeatedly
+ * emptying a few resources and placing their shapes again, until the time budget runs out or the area bound is reached.
+ */
+public class HeuristicSolver {
+   /** Time budget in milliseconds, when no time limit is given. */
+   protected final static long DefaultBudget = 1000L;
+
+   protected final Problem problem;
+   protected final Options options;
+   protected final boolean guillotine;
+   protected final Packer[] packers;
+
+   protected int iterations = 0;
+
+   public HeuristicSolver(Problem problem, Options options) {
+      this.problem    = problem;
+      this.options    = options;
+      this.guillotine = (options.guillotineStages > 0);
+      this.packers    = Packer.all(problem, guillotine);
+   }
+
+   /**
+    * Returns the columns of the best packing found, one per resource.
+    */
+   public List<Column> solve() {
+      Logger.info("Solving heuristically...").inYellow().println();
+      long deadline = (options.timeLimit > 0 ? options.deadline() : System.nanoTime() + DefaultBudget * 1000000L);
+
+      List<Column> best = null;
+      for(Packer p : packers) {
+         List<Column> cs = p.pack();
+         if(best == null || compare(cs, best) < 0)
+            best = cs;
+      }
+      if(shapes(best) < total())
+         throw new RuntimeException("Not all shapes fit inside a resource");
+
+      long bound = areaBound();
+      while(best.size() > bound && System.nanoTime() < deadline) {
+         iterations++;
+         List<Column> candidate = ruinAndRecreate(best);
+         if(shapes(candidate) == total() && compare(candidate, best) <= 0)
+            best = candidate;
+      }
+
+      Logger.info("Heuristic solution:").inBoldYellow().println();
+      double[] var = new double[best.size()];
+      Arrays.fill(var, 1d);
+      Solver.printSolution(best, var, best.size(), true);
+      Logger.info("   Tried " + iterations + " improvements; at least " + bound + " resources are needed by area").println();
+      return best;
+   }
+
+   /**
+    * Empties the least filled resource and a few random others, and places their shapes again: first in the holes of the
+    * remaining resources, then on new resources using a random packer.
+    */
+   protected List<Column> ruinAndRecreate(List<Column> solution) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      ArrayList<Column> kept = new ArrayList<Column>(solution);
+      int least = 0;
+      for(int i = 1; i < kept.size(); i++) {
+         if(fill(kept.get(i)) < fill(kept.get(least)))
+            least = i;
+      }
+      ArrayList<Column> ruined = new ArrayList<Column>();
+      ruined.add(kept.remove(least));
+      for(int n = random.nextInt(3); n > 0 && !kept.isEmpty(); n--) {
+         ruined.add(kept.remove(random.nextInt(kept.size())));
+      }
+
+      // Take the shapes of the ruined resources largest first, with a few random swaps so every attempt differs
+      ArrayList<Shape> shapes = new ArrayList<Shape>();
+      for(Column c : ruined) {
+         for(int i = 0; i < c.size(); i++) {
+            shapes.add(c.shape(i));
+         }
+      }
+      shapes.sort(ColumnBuilder.LargestFirst);
+      for(int n = random.nextInt(shapes.size() + 1); n > 0 && shapes.size() > 1; n--) {
+         int i = random.nextInt(shapes.size() - 1);
+         Collections.swap(shapes, i, i + 1);
+      }
+
+      // Guillotine patterns would not survive shapes being added in arbitrary places
+      if(!guillotine) {
+         Collections.shuffle(kept, random);
+         for(int i = 0; i < kept.size(); i++) {
+            kept.set(i, new Column(kept.get(i)));
+         }
+         shapes.removeIf((Shape s) -> insert(kept, s));
+      }
+      kept.addAll(packers[random.nextInt(packers.length)].pack(shapes));
+      return kept;
+   }
+
+   /**
+    * Places the given shape at the lowest location it fits in any of the given columns, and returns whether it fitted.
+    */
+   protected boolean insert(List<Column> columns, Shape s) {
+      for(Column c : columns) {
+         long[] locs = new long[c.maxLocs()];
+         if(c.possibleLocs(s, locs) > 0 && c.push(Column.unpackX(locs[0]), Column.unpackY(locs[0]), Column.unpackTurn(locs[0]), s)) {
+            // The column's cuts, if any, do not include the new shape
+            c.cuts = null;
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Compares two solutions by the number of resources used, and then by how unevenly the resources are filled, since
+    * emptying a resource gets easier as the others fill up.
+    */
+   protected int compare(List<Column> a, List<Column> b) {
+      if(a.size() != b.size())
+         return Integer.compare(a.size(), b.size());
+      return -Double.compare(a.stream().mapToDouble((Column c) -> fill(c) * fill(c)).sum(), b.stream().mapToDouble((Column c) -> fill(c) * fill(c)).sum());
+   }
+
+   /**
+    * Returns the fraction of the resource covered by the shapes in the given column, including their cutting loss.
+    */
+   protected double fill(Column c) {
+      double area = 0d;
+      for(int i = 0; i < c.size(); i++) {
+         area += (double) (c.shape(i).width + problem.cuttingLoss) * (c.shape(i).height + problem.cuttingLoss);
+      }
+      return area / ((double) (problem.resourceWidth + problem.cuttingLoss) * (problem.resourceHeight + problem.cuttingLoss));
+   }
+
+   protected long areaBound() {
+      double area = 0d;
+      for(RequiredShape rs : problem.shapes) {
+         area += rs.count() * (double) (rs.shape().width + problem.cuttingLoss) * (rs.shape().height + problem.cuttingLoss);
+      }
+      return (long) Math.ceil(area / ((double) (problem.resourceWidth + problem.cuttingLoss) * (problem.resourceHeight + problem.cuttingLoss)) - 1e-9);
+   }
+
+   protected int shapes(List<Column> columns) {
+      return columns.stream().mapToInt(Column::size).sum();
+   }
+
+   protected int total() {
+      return problem.shapes.stream().mapToInt(RequiredShape::count).sum();
+   }
+}
@@ -0,0 +1,228 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * Json.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * A minimal JSON reader and writer, just enough to exchange problems and solutions with other programs.
+ * Objects are read as a LinkedHashMap, arrays as an ArrayList, numbers as a Double, and strings, booleans and null as
+ * themselves. Errors are reported as an IllegalArgumentException that names the offset at which they occur, which
+ * includes values nested more than MaxDepth deep, as those would exhaust the stack of the reader.
+ */
+public class Json {
+   protected final static int MaxDepth = 256;
+
+   protected final String text;
+   protected int          position = 0, depth = 0;
+
+   protected Json(String text) {
+      this.text = text;
+   }
+
+   public static Object parse(String text) {
+      Json   json  = new Json(text);
+      Object value = json.value();
+      json.skipSpaces();
+      if(json.position < text.length())
+         throw json.error("Unexpected '" + text.charAt(json.position) + "' after the value");
+      return value;
+   }
+
+   /**
+    * Returns the given string as a JSON string literal.
+    */
+   public static String quote(String s) {
+      StringBuilder sb = new StringBuilder("\"");
+      for(int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         switch(c) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n");  break;
+            case '\r': sb.append("\\r");  break;
+            case '\t': sb.append("\\t");  break;
+            default:
+               if(c < 0x20)
+                  sb.append(String.format("\\u%04x", (int) c));
+               else
+                  sb.append(c);
+         }
+      }
+      return sb.append('"').toString();
+   }
+
+   /**
+    * Returns the given number as a JSON number, or null if it is not finite, which JSON cannot express.
+    */
+   public static String number(double v) {
+      return (Double.isFinite(v) ? String.valueOf(v) : "null");
+   }
+
+   /**
+    * Returns the given number rounded to an integer as a JSON number, or null if it is not finite.
+    */
+   public static String integer(double v) {
+      return (Double.isFinite(v) ? String.valueOf(Math.round(v)) : "null");
+   }
+
+   protected Object value() {
+      skipSpaces();
+      if(position >= text.length())
+         throw error("Unexpected end of input");
+      char c = text.charAt(position);
+      switch(c) {
+         case '{':
+         case '[':
+            if(depth >= MaxDepth)
+               throw error("Values are nested more than " + MaxDepth + " deep");
+            depth++;
+            Object nested = (c == '{' ? object() : array());
+            depth--;
+            return nested;
+         case '"':
+            return string();
+         case 't':
+            return literal("true", Boolean.TRUE);
+         case 'f':
+            return literal("false", Boolean.FALSE);
+         case 'n':
+            return literal("null", null);
+         default:
+            if(c == '-' || (c >= '0' && c <= '9'))
+               return number();
+            throw error("Unexpected '" + c + "'");
+      }
+   }
+
+   protected LinkedHashMap<String, Object> object() {
+      LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+      position++;
+      if(next('}'))
+         return map;
+      do {
+         skipSpaces();
+         if(position >= text.length() || text.charAt(position) != '"')
+            throw error("Expected a key");
+         String key = string();
+         if(!next(':'))
+            throw error("Expected ':'");
+         map.put(key, value());
+      } while(next(','));
+      if(!next('}'))
+         throw error("Expected ',' or '}'");
+      return map;
+   }
+
+   protected ArrayList<Object> array() {
+      ArrayList<Object> list = new ArrayList<Object>();
+      position++;
+      if(next(']'))
+         return list;
+      do {
+         list.add(value());
+      } while(next(','));
+      if(!next(']'))
+         throw error("Expected ',' or ']'");
+      return list;
+   }
+
+   protected String string() {
+      StringBuilder sb = new StringBuilder();
+      for(position++; position < text.length(); position++) {
+         char c = text.charAt(position);
+         if(c == '"') {
+            position++;
+            return sb.toString();
+         }
+         if(c != '\\') {
+            sb.append(c);
+            continue;
+         }
+         if(++position >= text.length())
+            break;
+         switch(c = text.charAt(position)) {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+               if(position + 4 >= text.length())
+                  throw error("Incomplete escape");
+               try {
+                  sb.append((char) Integer.parseInt(text.substring(position + 1, position + 5), 16));
+               }
+               catch(NumberFormatException ex) {
+                  throw error("Invalid escape");
+               }
+               position += 4;
+               break;
+            default:
+               sb.append(c);
+         }
+      }
+      throw error("Unterminated string");
+   }
+
+   protected Double number() {
+      int start = position;
+      while(position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+         position++;
+      }
+      try {
+         return Double.valueOf(text.substring(start, position));
+      }
+      catch(NumberFormatException ex) {
+         position = start;
+         throw error("Invalid number");
+      }
+   }
+
+   protected Object literal(String word, Object value) {
+      if(!text.startsWith(word, position))
+         throw error("Unexpected '" + text.charAt(position) + "'");
+      position += word.length();
+      return value;
+   }
+
+   /**
+    * Skips spaces, and consumes the given character if it comes next.
+    */
+   protected boolean next(char c) {
+      skipSpaces();
+      if(position < text.length() && text.charAt(position) == c) {
+         position++;
+         return true;
+      }
+      return false;
+   }
+
+   protected void skipSpaces() {
+      while(position < text.length() && Character.isWhitespace(text.charAt(position))) {
+         position++;
+      }
+   }
+
+   protected IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("JSON at offset " + position + ": " + message);
+   }
+}
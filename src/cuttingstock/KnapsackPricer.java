@@ -0,0 +1,266 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * KnapsackPricer.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the columns with the most negative reduced costs directly from the duals.
+ * A bounded knapsack over the area of a resource bounds the value of every multiset of shapes; a depth-first search then
+ * picks the number of copies of every shape, most valuable shape and most copies first, and prunes every branch whose
+ * bound cannot improve on the best columns found so far. The multisets it reaches are handed to the ColumnBuilder for a
+ * geometric check. Given a pool, these checks are run concurrently in batches.
+ */
+public class KnapsackPricer implements Pricer {
+   protected static class Candidate {
+      protected final Shape[] shapes;
+      protected final double  value;
+      protected       Column  column;
+
+      protected Candidate(Shape shapes[], double value) {
+         this.shapes = shapes;
+         this.value  = value;
+      }
+   }
+
+   protected final static double Epsilon     = 1e-9;
+   protected final static int    MaxCapacity = 4096;
+   protected final static int    MaxAttempts = 256;
+
+   protected final ColumnBuilder columnBuilder;
+   protected final ForkJoinPool  pool;
+   protected final Problem       problem;
+   protected final long          budget;
+   protected final int           capacity;
+   protected final int[]         weights, limits;
+
+   protected double[]                 values;
+   protected double[][]               bounds;
+   protected int[]                    order, counts;
+   protected int                      attempts, max;
+   protected long                     deadline;
+   protected boolean                  complete = false, partial;
+   protected Set<ShapeCounts>         excluded;
+   protected PriorityQueue<Candidate> found;
+   protected ArrayList<Candidate>     pending, unsettled;
+
+   public KnapsackPricer(Problem problem, ColumnBuilder columnBuilder) {
+      this(problem, columnBuilder, null, 0L);
+   }
+
+   /**
+    * Creates a pricer that checks its candidates on the given pool, if any, and stops looking for more columns once the
+    * given budget in milliseconds has run out and at least one column was found. A budget of zero means no time limit.
+    */
+   public KnapsackPricer(Problem problem, ColumnBuilder columnBuilder, ForkJoinPool pool, long budget) {
+      this.problem       = problem;
+      this.columnBuilder = columnBuilder;
+      this.pool          = pool;
+      this.budget        = budget;
+      // Each shape claims its own area plus the cutting loss along two of its sides, in a resource that is enlarged by the
+      // cutting loss accordingly. Rounding the weights down keeps the knapsack a relaxation of the geometric problem.
+      long sheet = (long) (problem.resourceWidth + problem.cuttingLoss) * (problem.resourceHeight + problem.cuttingLoss),
+           unit  = Math.max(1L, (sheet + MaxCapacity - 1) / MaxCapacity);
+      capacity = (int) (sheet / unit);
+      weights  = new int[problem.shapes.size()];
+      limits   = new int[problem.shapes.size()];
+      for(int i = 0; i < weights.length; i++) {
+         Shape s = problem.shapes.get(i).shape();
+         long area = (long) (s.width + problem.cuttingLoss) * (s.height + problem.cuttingLoss);
+         weights[i] = (int) (area / unit);
+         if((s.width <= problem.resourceWidth && s.height <= problem.resourceHeight) || (s.height <= problem.resourceWidth && s.width <= problem.resourceHeight))
+            limits[i] = (int) Math.min(problem.shapes.get(i).count(), sheet / area);
+      }
+   }
+
+   //--- cuttingstock.Pricer
+   @Override
+   public Column[] price(double duals[], int max, Set<ShapeCounts> excluded) {
+      // Only shapes with a positive dual can contribute to the value of a column
+      order  = IntStream.range(0, duals.length)
+                        .filter((int i) -> duals[i] > Epsilon && limits[i] > 0)
+                        .boxed()
+                        .sorted(Comparator.comparing((Integer i) -> -duals[i]))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+      values = new double[order.length];
+      counts = new int[order.length];
+      for(int i = 0; i < order.length; i++) {
+         values[i] = duals[order[i]];
+      }
+
+      // bounds[i][c] holds the highest value attainable with shapes i and onwards in the given order, using capacity c
+      bounds = new double[order.length + 1][capacity + 1];
+      for(int i = order.length - 1; i >= 0; i--) {
+         int w = weights[order[i]];
+         for(int c = 0; c <= capacity; c++) {
+            double v = bounds[i + 1][c];
+            for(int t = 1; t <= limits[order[i]] && t * w <= c; t++) {
+               v = Math.max(v, t * values[i] + bounds[i + 1][c - t * w]);
+            }
+            bounds[i][c] = v;
+         }
+      }
+      Logger.debug("   Knapsack bound on the value of new columns: " + bounds[0][capacity]).println();
+
+      this.max       = max;
+      this.excluded  = excluded;
+      this.attempts  = 0;
+      this.deadline  = (budget > 0L ? System.nanoTime() + budget * 1000000L : Long.MAX_VALUE);
+      this.complete  = true;
+      this.partial   = (order.length < IntStream.of(limits).filter((int l) -> l > 0).count());
+      this.found     = new PriorityQueue<Candidate>(Comparator.comparingDouble((Candidate c) -> c.value));
+      this.pending   = new ArrayList<Candidate>();
+      this.unsettled = new ArrayList<Candidate>();
+      search(0, capacity, 0d);
+      check();
+      if(found.isEmpty() && complete)
+         settle();
+
+      return found.stream()
+                  .sorted(Comparator.comparingDouble((Candidate c) -> -c.value))
+                  .map((Candidate c) -> c.column)
+                  .toArray(Column[]::new);
+   }
+
+   @Override
+   public double bound() {
+      return (bounds == null ? Double.POSITIVE_INFINITY : bounds[0][capacity]);
+   }
+
+   @Override
+   public boolean exhaustive() {
+      return complete;
+   }
+
+   /**
+    * Returns the value a new column should exceed: the cost of a resource, or the value of the worst of the columns found
+    * so far once there are enough of them.
+    */
+   protected double target() {
+      return (found.size() < max ? 1d : Math.max(1d, found.peek().value));
+   }
+
+   protected void search(int i, int c, double value) {
+      if(value + bounds[i][c] <= target() + Epsilon)
+         return;
+      if(attempts >= MaxAttempts || (!found.isEmpty() && System.nanoTime() > deadline)) {
+         complete = false;
+         return;
+      }
+
+      if(i == order.length) {
+         Shape[] shapes = explode();
+         if(excluded.contains(ShapeCounts.of(shapes))) {
+            // Adding shapes without a dual to an excluded column keeps its value, but such columns are never enumerated
+            if(partial)
+               complete = false;
+            return;
+         }
+         attempts++;
+         pending.add(new Candidate(shapes, value));
+         if(pool == null || pending.size() >= 2 * pool.getParallelism())
+            check();
+         return;
+      }
+
+      int w = weights[order[i]];
+      for(int t = (w == 0 ? limits[order[i]] : Math.min(limits[order[i]], c / w)); t >= 0; t--) {
+         counts[i] = t;
+         search(i + 1, c - t * w, value + t * values[i]);
+      }
+      counts[i] = 0;
+   }
+
+   /**
+    * Checks the geometric feasibility of all pending candidates, and keeps the best ones that turned out to be feasible.
+    */
+   protected void check() {
+      if(pool == null || pending.size() == 1) {
+         for(Candidate c : pending) {
+            c.column = columnBuilder.buildColumn(problem, c.shapes);
+         }
+      }
+      else {
+         ArrayList<Callable<Column>> tasks = new ArrayList<Callable<Column>>();
+         for(Candidate c : pending) {
+            tasks.add(() -> columnBuilder.buildColumn(problem, c.shapes));
+         }
+         try {
+            List<Future<Column>> results = pool.invokeAll(tasks);
+            for(int i = 0; i < pending.size(); i++) {
+               pending.get(i).column = results.get(i).get();
+            }
+         }
+         catch(InterruptedException | ExecutionException ex) {
+            throw new RuntimeException("Checking candidate columns failed", ex);
+         }
+      }
+
+      for(Candidate c : pending) {
+         if(c.column == null && !columnBuilder.provenInfeasible(c.shapes))
+            unsettled.add(c);
+         if(c.column != null && c.value > target() + Epsilon) {
+            Logger.debug("      Found column with value " + c.value).println();
+            found.offer(c);
+            if(found.size() > max)
+               found.poll();
+         }
+      }
+      pending.clear();
+   }
+
+   /**
+    * Settles whether the candidates that were rejected without proof fit, as a round without columns only shows that none
+    * exist if every candidate is known not to fit. Keeps the ones that turn out to fit.
+    */
+   protected void settle() {
+      for(Candidate c : unsettled) {
+         c.column = columnBuilder.settle(problem, c.shapes);
+         if(c.column != null) {
+            Logger.debug("      Found column with value " + c.value + " by a complete search").println();
+            found.offer(c);
+            if(found.size() > max)
+               found.poll();
+         }
+         else if(!columnBuilder.provenInfeasible(c.shapes))
+            complete = false;
+      }
+   }
+
+   protected Shape[] explode() {
+      ArrayList<Shape> shapes = new ArrayList<Shape>();
+      for(int i = 0; i < order.length; i++) {
+         for(int t = 0; t < counts[i]; t++) {
+            shapes.add(problem.shapes.get(order[i]).shape());
+         }
+      }
+      return shapes.toArray(new Shape[shapes.size()]);
+   }
+}
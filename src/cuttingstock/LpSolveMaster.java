@@ -0,0 +1,209 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * LpSolveMaster.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import lpsolve.*;
+import java.util.Arrays;
+
+/**
+ * Master problem solved by lp_solve.
+ */
+public class LpSolveMaster implements MasterProblem {
+   protected final LpSolve lp;
+   protected final int     rows;
+
+   protected int[]   basis      = null;
+   protected long    iterations = 0L;
+   protected boolean closed     = false;
+
+   public LpSolveMaster(double rhs[]) {
+      try {
+         rows = rhs.length;
+         lp   = LpSolve.makeLp(rows, 0);
+         lp.setVerbose(LpSolve.IMPORTANT);
+         lp.setMinim();
+         for(int i = 0; i < rows; i++) {
+            lp.setConstrType(i + 1, LpSolve.GE);
+            lp.setRh(i + 1, rhs[i]);
+            lp.setRowName(i + 1, "" + (i + 1));
+         }
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Constructing the lp failed", ex);
+      }
+   }
+
+   //--- cuttingstock.MasterProblem
+   @Override
+   public int addColumn(double cost, double coefficients[]) {
+      double col[] = new double[rows + 1];
+      col[0] = cost;
+      System.arraycopy(coefficients, 0, col, 1, rows);
+      try {
+         lp.addColumn(col);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Adding a column failed", ex);
+      }
+      return lp.getNcolumns() - 1;
+   }
+
+   @Override
+   public void deleteColumn(int column) {
+      try {
+         lp.delColumn(column + 1);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Deleting column " + column + " failed", ex);
+      }
+      // The basis refers to the columns by number, so it no longer applies
+      basis = null;
+   }
+
+   @Override
+   public int columns() {
+      return lp.getNcolumns();
+   }
+
+   @Override
+   public int rows() {
+      return rows;
+   }
+
+   @Override
+   public void setBounds(int column, double lower, double upper) {
+      try {
+         lp.setLowbo(column + 1, lower);
+         lp.setUpbo(column + 1, Double.isInfinite(upper) ? lp.getInfinite() : upper);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Setting the bounds of column " + column + " failed", ex);
+      }
+   }
+
+   @Override
+   public double lower(int column) {
+      try {
+         return lp.getLowbo(column + 1);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Getting the bounds of column " + column + " failed", ex);
+      }
+   }
+
+   @Override
+   public double upper(int column) {
+      try {
+         double u = lp.getUpbo(column + 1);
+         return (u >= lp.getInfinite() ? Double.POSITIVE_INFINITY : u);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Getting the bounds of column " + column + " failed", ex);
+      }
+   }
+
+   @Override
+   public void setRhs(int row, double value) {
+      try {
+         lp.setRh(row + 1, value);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Setting the right-hand side of row " + row + " failed", ex);
+      }
+   }
+
+   @Override
+   public double rhs(int row) {
+      return lp.getRh(row + 1);
+   }
+
+   @Override
+   public Status solve() {
+      try {
+         // Start from the previous basis: new columns enter it as nonbasic variables, so the basis stays valid and the
+         // simplex method only has to bring in the new columns that improve the solution
+         if(basis != null) {
+            try {
+               lp.setBasis(basis, false);
+            }
+            catch(LpSolveException ex) {
+               lp.defaultBasis();
+            }
+         }
+         int status = lp.solve();
+         iterations = lp.getTotalIter();
+         basis      = new int[rows + 1];
+         lp.getBasis(basis, false);
+         switch(status) {
+            case LpSolve.OPTIMAL:
+            case LpSolve.SUBOPTIMAL:
+               return Status.OPTIMAL;
+            case LpSolve.INFEASIBLE:
+               return Status.INFEASIBLE;
+            case LpSolve.UNBOUNDED:
+               return Status.UNBOUNDED;
+            default:
+               return Status.FAILED;
+         }
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Solving the lp failed", ex);
+      }
+   }
+
+   @Override
+   public double objective() {
+      return lp.getObjective();
+   }
+
+   @Override
+   public double[] primal() {
+      try {
+         return Arrays.copyOf(lp.getPtrVariables(), lp.getNcolumns());
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Retrieving the solution failed", ex);
+      }
+   }
+
+   @Override
+   public double[] duals() {
+      try {
+         return Arrays.copyOfRange(lp.getPtrDualSolution(), 1, rows + 1);
+      }
+      catch(LpSolveException ex) {
+         throw new IllegalStateException("Retrieving the duals failed", ex);
+      }
+   }
+
+   @Override
+   public long iterations() {
+      return iterations;
+   }
+
+   //--- java.lang.AutoCloseable
+   @Override
+   public void close() {
+      if(!closed) {
+         lp.deleteLp();
+         closed = true;
+      }
+   }
+}
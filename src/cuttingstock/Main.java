@@ -22,14 +22,52 @@ package cuttingstock;
 public class Main {
 
    public static void main(String[] args) {
-      if(args.length == 1) {
-         try(Solver solver = new Solver(new Problem(new java.io.File(args[0])))) {
-            solver.solve();
+      Options options = new Options();
+      java.util.ArrayList<String> files;
+      try {
+         files = options.parse(args);
+      }
+      catch(IllegalArgumentException ex) {
+         Logger.error(ex.getMessage()).println();
+         files = null;
+      }
+
+      if(files != null && options.port > 0) {
+         try {
+            SolverService service = new SolverService(options);
+            Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+            service.start();
+         }
+         catch(java.io.IOException ex) {
+            Logger.error("Could not start the service: " + ex.getMessage()).println();
+         }
+      }
+      else if(files != null && (options.batch || files.size() > 1)) {
+         new BatchSolver(options).solve(BatchSolver.sources(files));
+      }
+      else if(files != null && files.size() == 1) {
+         Problem problem;
+         try {
+            problem = new Problem(new java.io.File(files.get(0)));
+         }
+         catch(IllegalArgumentException ex) {
+            Logger.error(ex.getMessage()).println();
+            return;
+         }
+         if(options.heuristic)
+            new HeuristicSolver(problem, options).solve();
+         else {
+            try(Solver solver = new Solver(problem, options)) {
+               solver.solve();
+            }
          }
       }
       else {
          System.out.println("Cutting stock optimiser");
-         System.out.println("Usage: java -jar cuttingstock.jar PROBLEMFILE");
+         System.out.println("Usage: java -jar cuttingstock.jar [OPTIONS] PROBLEMFILE");
+         System.out.println("       java -jar cuttingstock.jar [OPTIONS] --batch [PROBLEMFILE|DIRECTORY]...");
+         System.out.println("       java -jar cuttingstock.jar [OPTIONS] --serve PORT");
+         Options.printUsage();
       }
    }
 }
@@ -0,0 +1,75 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * MasterProblem.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+/**
+ * The linear program over the columns found so far: minimise the total cost of the columns used, such that every row is
+ * covered at least as many times as its right-hand side demands.
+ * Rows and columns are numbered from zero; deleting a column shifts the numbers of all columns after it down by one.
+ * Implementations are expected to reuse their previous basis when solving again after columns were added.
+ */
+public interface MasterProblem extends AutoCloseable {
+   public enum Status {
+      OPTIMAL,
+      INFEASIBLE,
+      UNBOUNDED,
+      FAILED,
+   }
+
+   /**
+    * Adds a column with the given cost and coefficients per row, bounded below by zero and unbounded above, and returns its
+    * number.
+    */
+   public int addColumn(double cost, double coefficients[]);
+
+   public void deleteColumn(int column);
+
+   public int columns();
+
+   public int rows();
+
+   public void setBounds(int column, double lower, double upper);
+
+   public double lower(int column);
+
+   public double upper(int column);
+
+   public void setRhs(int row, double value);
+
+   public double rhs(int row);
+
+   public Status solve();
+
+   /** Returns the objective value of the last solution. */
+   public double objective();
+
+   /** Returns the value of every column in the last solution. */
+   public double[] primal();
+
+   /** Returns the dual value of every row in the last solution. */
+   public double[] duals();
+
+   /** Returns the number of simplex iterations used by the last solve. */
+   public long iterations();
+
+   //--- java.lang.AutoCloseable
+   @Override
+   public void close();
+}
@@ -0,0 +1,105 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * MaxRectsPacker.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+
+/**
+ * MaxRects packing: keeps the maximal empty rectangles of the resource, and places every shape in the one it fits best,
+ * i.e. leaving the smallest margin along its shorter side.
+ * Rectangles are stored as {x, y, width, height}.
+ */
+public class MaxRectsPacker extends Packer {
+   protected final ArrayList<int[]> free = new ArrayList<int[]>();
+
+   public MaxRectsPacker(Problem problem) {
+      super(problem);
+   }
+
+   @Override
+   protected void start() {
+      super.start();
+      free.clear();
+      free.add(new int[]{ 0, 0, width, height });
+   }
+
+   @Override
+   protected boolean place(Shape s) {
+      int[]   best      = null;
+      boolean bestTurn  = false;
+      int     bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE;
+      for(int[] f : free) {
+         for(boolean turn : new boolean[]{ false, true }) {
+            int w = (turn ? s.height : s.width)  + problem.cuttingLoss,
+                h = (turn ? s.width  : s.height) + problem.cuttingLoss;
+            if(w > f[2] || h > f[3])
+               continue;
+            int shortSide = Math.min(f[2] - w, f[3] - h),
+                longSide  = Math.max(f[2] - w, f[3] - h);
+            if(shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+               best      = f;
+               bestTurn  = turn;
+               bestShort = shortSide;
+               bestLong  = longSide;
+            }
+         }
+      }
+      if(best == null || !column.push(best[0], best[1], bestTurn, s))
+         return false;
+      split(new int[]{ best[0], best[1], (bestTurn ? s.height : s.width) + problem.cuttingLoss, (bestTurn ? s.width : s.height) + problem.cuttingLoss });
+      return true;
+   }
+
+   /**
+    * Replaces every free rectangle overlapping the given used one by the maximal rectangles of what remains of it.
+    */
+   protected void split(int used[]) {
+      ArrayList<int[]> parts = new ArrayList<int[]>();
+      for(int i = free.size() - 1; i >= 0; i--) {
+         int[] f = free.get(i);
+         if(used[0] >= f[0] + f[2] || f[0] >= used[0] + used[2] || used[1] >= f[1] + f[3] || f[1] >= used[1] + used[3])
+            continue;
+         free.remove(i);
+         if(used[0] > f[0])
+            parts.add(new int[]{ f[0], f[1], used[0] - f[0], f[3] });
+         if(used[0] + used[2] < f[0] + f[2])
+            parts.add(new int[]{ used[0] + used[2], f[1], f[0] + f[2] - used[0] - used[2], f[3] });
+         if(used[1] > f[1])
+            parts.add(new int[]{ f[0], f[1], f[2], used[1] - f[1] });
+         if(used[1] + used[3] < f[1] + f[3])
+            parts.add(new int[]{ f[0], used[1] + used[3], f[2], f[1] + f[3] - used[1] - used[3] });
+      }
+      free.addAll(parts);
+
+      // Drop rectangles that are contained in others
+      for(int i = free.size() - 1; i >= 0; i--) {
+         for(int j = 0; j < free.size(); j++) {
+            if(i != j && contains(free.get(j), free.get(i)) && (!contains(free.get(i), free.get(j)) || j < i)) {
+               free.remove(i);
+               break;
+            }
+         }
+      }
+   }
+
+   protected static boolean contains(int a[], int b[]) {
+      return a[0] <= b[0] && a[1] <= b[1] && b[0] + b[2] <= a[0] + a[2] && b[1] + b[3] <= a[1] + a[3];
+   }
+}
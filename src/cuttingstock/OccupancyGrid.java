@@ -0,0 +1,105 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * OccupancyGrid.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index of the rectangles placed on a resource.
+ * The resource is divided into cells about the size of the smallest shape, and each cell lists the rectangles covering
+ * it, so an overlap query only has to look at the few rectangles near the queried one.
+ * Rectangles are half-open, i.e. [x0, x1) x [y0, y1), and stored as consecutive quadruples of coordinates.
+ */
+public class OccupancyGrid {
+   protected final static int MaxCells = 64;
+
+   protected final int     cellWidth, cellHeight, columns, rows;
+   protected final int[]   sizes;
+   protected final int[][] cells;
+
+   public OccupancyGrid(Problem problem) {
+      int width  = problem.resourceWidth  + problem.cuttingLoss,
+          height = problem.resourceHeight + problem.cuttingLoss,
+          side   = Math.min(problem.minimumSide, Math.max(width, height)) + problem.cuttingLoss;
+      cellWidth  = Math.max(side, (width  + MaxCells - 1) / MaxCells);
+      cellHeight = Math.max(side, (height + MaxCells - 1) / MaxCells);
+      columns    = (width  + cellWidth  - 1) / cellWidth;
+      rows       = (height + cellHeight - 1) / cellHeight;
+      sizes      = new int[columns * rows];
+      cells      = new int[columns * rows][];
+   }
+
+   public void add(int x0, int y0, int x1, int y1) {
+      for(int r = row(y0); r <= row(y1 - 1); r++) {
+         for(int c = column(x0); c <= column(x1 - 1); c++) {
+            int i = r * columns + c;
+            if(cells[i] == null)
+               cells[i] = new int[16];
+            else if(sizes[i] + 4 > cells[i].length)
+               cells[i] = Arrays.copyOf(cells[i], Math.max(16, 2 * cells[i].length));
+            cells[i][sizes[i]++] = x0;
+            cells[i][sizes[i]++] = y0;
+            cells[i][sizes[i]++] = x1;
+            cells[i][sizes[i]++] = y1;
+         }
+      }
+   }
+
+   public void remove(int x0, int y0, int x1, int y1) {
+      for(int r = row(y0); r <= row(y1 - 1); r++) {
+         for(int c = column(x0); c <= column(x1 - 1); c++) {
+            int i = r * columns + c;
+            for(int j = 0; j < sizes[i]; j += 4) {
+               if(cells[i][j] == x0 && cells[i][j + 1] == y0 && cells[i][j + 2] == x1 && cells[i][j + 3] == y1) {
+                  // Move the last rectangle of this cell into the gap
+                  sizes[i] -= 4;
+                  System.arraycopy(cells[i], sizes[i], cells[i], j, 4);
+                  break;
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns whether the given rectangle overlaps any of the rectangles in this grid.
+    */
+   public boolean overlaps(int x0, int y0, int x1, int y1) {
+      for(int r = row(y0); r <= row(y1 - 1); r++) {
+         for(int c = column(x0); c <= column(x1 - 1); c++) {
+            int   i    = r * columns + c;
+            int[] cell = cells[i];
+            for(int j = 0; j < sizes[i]; j += 4) {
+               if(cell[j] < x1 && x0 < cell[j + 2] && cell[j + 1] < y1 && y0 < cell[j + 3])
+                  return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   protected int column(int x) {
+      return Math.max(0, Math.min(columns - 1, x / cellWidth));
+   }
+
+   protected int row(int y) {
+      return Math.max(0, Math.min(rows - 1, y / cellHeight));
+   }
+}
@@ -0,0 +1,197 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * Options.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.File;
+import java.util.ArrayList;
+
+public class Options implements Cloneable {
+   public enum Pricing {
+      KNAPSACK,
+      SUBSETS,
+   }
+
+   public enum Backend {
+      LPSOLVE,
+      SIMPLEX,
+   }
+
+   protected Backend backend          = Backend.LPSOLVE;
+   protected Pricing pricing          = Pricing.KNAPSACK;
+   protected int     guillotineStages = 0;
+   protected int     threads          = 1;
+   protected int     columns          = 10;
+   protected long    budget           = 0L;
+   protected double  smoothing        = 0.5;
+   protected double  gap              = 0d;
+   protected long    timeLimit        = 0L;
+   protected int     maxIterations    = 0;
+   protected int     maxColumns       = 1000;
+   protected boolean batch            = false;
+   protected int     jobs             = Runtime.getRuntime().availableProcessors();
+   protected int     port             = 0;
+   protected int     queue            = 16;
+   protected File    patternCache     = null;
+   protected boolean heuristic        = false;
+
+   /**
+    * Returns a copy of these options, which can be changed for a single problem.
+    */
+   public Options copy() {
+      try {
+         return (Options) clone();
+      }
+      catch(CloneNotSupportedException ex) {
+         throw new IllegalStateException(ex);
+      }
+   }
+
+   /**
+    * Returns the moment at which the time limit runs out, in terms of System.nanoTime(), or Long.MAX_VALUE if there is no
+    * time limit or it lies too far ahead to express.
+    */
+   public long deadline() {
+      if(timeLimit <= 0L)
+         return Long.MAX_VALUE;
+      try {
+         return Math.addExact(System.nanoTime(), Math.multiplyExact(timeLimit, 1000000000L));
+      }
+      catch(ArithmeticException ex) {
+         return Long.MAX_VALUE;
+      }
+   }
+
+   /**
+    * Parses the options from the given command line arguments, and returns the remaining arguments.
+    */
+   public ArrayList<String> parse(String args[]) {
+      ArrayList<String> rest = new ArrayList<String>();
+      for(int i = 0; i < args.length; i++) {
+         switch(args[i]) {
+            case "--lp":
+               backend = Backend.valueOf(value(args, ++i).toUpperCase());
+               break;
+            case "--pricing":
+               pricing = Pricing.valueOf(value(args, ++i).toUpperCase());
+               break;
+            case "--guillotine":
+               guillotineStages = Integer.parseInt(value(args, ++i));
+               if(guillotineStages != 2 && guillotineStages != 3)
+                  throw new IllegalArgumentException("Guillotine patterns need either 2 or 3 stages");
+               break;
+            case "--threads":
+               threads = positive(args, ++i);
+               break;
+            case "--columns":
+               columns = positive(args, ++i);
+               break;
+            case "--budget":
+               budget = positive(args, ++i);
+               break;
+            case "--smoothing":
+               smoothing = Double.parseDouble(value(args, ++i));
+               if(smoothing < 0d || smoothing >= 1d)
+                  throw new IllegalArgumentException("Smoothing needs a value of at least 0 and less than 1");
+               break;
+            case "--gap":
+               gap = Double.parseDouble(value(args, ++i));
+               if(gap < 0d)
+                  throw new IllegalArgumentException("Gap cannot be negative");
+               break;
+            case "--heuristic":
+               heuristic = true;
+               break;
+            case "--time-limit":
+               timeLimit = positive(args, ++i);
+               break;
+            case "--max-iterations":
+               maxIterations = positive(args, ++i);
+               break;
+            case "--max-columns":
+               maxColumns = positive(args, ++i);
+               break;
+            case "--batch":
+               batch = true;
+               break;
+            case "--jobs":
+               jobs = positive(args, ++i);
+               break;
+            case "--serve":
+               port = positive(args, ++i);
+               break;
+            case "--queue":
+               queue = positive(args, ++i);
+               break;
+            case "--pattern-cache":
+               patternCache = new File(value(args, ++i));
+               break;
+            default:
+               if(args[i].startsWith("--"))
+                  throw new IllegalArgumentException("Unknown option " + args[i]);
+               rest.add(args[i]);
+         }
+      }
+      return rest;
+   }
+
+   protected String value(String args[], int i) {
+      if(i >= args.length)
+         throw new IllegalArgumentException("Missing value for option " + args[i - 1]);
+      return args[i];
+   }
+
+   protected int positive(String args[], int i) {
+      int v = Integer.parseInt(value(args, i));
+      if(v < 1)
+         throw new IllegalArgumentException("Option " + args[i - 1] + " needs a positive value");
+      return v;
+   }
+
+   public static void printUsage() {
+      System.out.println("Options:");
+      System.out.println("   --lp lpsolve|simplex         Solver used for the master lp: lp_solve, or the built-in simplex method");
+      System.out.println("                                (default: lpsolve)");
+      System.out.println("   --pricing knapsack|subsets   Pricing strategy used to generate new columns (default: knapsack)");
+      System.out.println("   --guillotine 2|3             Only generate patterns of guillotine cuts, in 2 or 3 stages");
+      System.out.println("   --threads N                  Number of threads used to check candidate columns (default: 1)");
+      System.out.println("   --columns K                  Maximum number of columns added per pricing round (default: 10)");
+      System.out.println("   --budget MS                  Time spent gathering columns before the lp is solved again, once at least");
+      System.out.println("                                one column is found (default: no limit)");
+      System.out.println("   --smoothing A                Weight of the best duals so far in the duals used for pricing (default: 0.5)");
+      System.out.println("   --gap G                      Relative gap between the best solution and the lower bound at which the");
+      System.out.println("                                search stops, both for the lp and the integral problem (default: 0)");
+      System.out.println("   --heuristic                  Only pack the shapes greedily and improve on that by local search, without");
+      System.out.println("                                solving any lp; takes a second, or the time limit");
+      System.out.println("   --time-limit S               Stop after S seconds with the best solution found (default: no limit)");
+      System.out.println("   --max-iterations N           Stop after N pricing rounds with the best solution found (default: no limit)");
+      System.out.println("   --max-columns N              Number of columns above which unused columns are purged from the lp while");
+      System.out.println("                                solving the fractional problem (default: 1000)");
+      System.out.println("   --batch                      Solve every given problem file, every .problem file in the given");
+      System.out.println("                                directories, or every file named on standard input if none are given");
+      System.out.println("   --jobs N                     Number of problems solved concurrently in batch mode (default: one per");
+      System.out.println("                                processor)");
+      System.out.println("   --serve PORT                 Keep running and solve the problems posted to http://localhost:PORT/solve,");
+      System.out.println("                                --jobs at a time");
+      System.out.println("   --queue N                    Number of posted problems that may wait for a free job before new ones are");
+      System.out.println("                                turned away (default: 16)");
+      System.out.println("   --pattern-cache FILE         Remember which sets of shapes fit on the resources in the given file, and");
+      System.out.println("                                start from the patterns found by earlier runs");
+   }
+}
@@ -0,0 +1,112 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * Packer.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Greedy heuristic that fills one resource at a time with the shapes that are still to be placed, in a fixed order.
+ * Like the rest of the solver, packers work in a resource enlarged by the cutting loss, in which every shape claims its
+ * own size plus the cutting loss and shapes only have to be disjoint.
+ */
+public abstract class Packer {
+   protected final Problem problem;
+   protected final int     width, height;
+
+   protected Column column;
+
+   public Packer(Problem problem) {
+      this.problem = problem;
+      this.width   = problem.resourceWidth  + problem.cuttingLoss;
+      this.height  = problem.resourceHeight + problem.cuttingLoss;
+   }
+
+   /**
+    * Packs all shapes demanded by the problem, and returns a column per resource used.
+    */
+   public List<Column> pack() {
+      ArrayList<Shape> shapes = new ArrayList<Shape>();
+      for(RequiredShape rs : problem.shapes) {
+         shapes.addAll(Collections.nCopies(rs.count(), rs.shape()));
+      }
+      shapes.sort(order());
+      return pack(shapes);
+   }
+
+   /**
+    * Packs the given shapes in the given order, each on the first resource it fits on, and returns a column per resource
+    * used. Shapes that do not fit on a resource at all are left out.
+    */
+   public List<Column> pack(List<Shape> shapes) {
+      ArrayList<Column> columns   = new ArrayList<Column>();
+      ArrayList<Shape>  remaining = new ArrayList<Shape>(shapes);
+      while(!remaining.isEmpty()) {
+         start();
+         for(Iterator<Shape> it = remaining.iterator(); it.hasNext(); ) {
+            if(place(it.next()))
+               it.remove();
+         }
+         Column c = finish();
+         if(c.size() == 0)
+            break;
+         columns.add(c);
+      }
+      return columns;
+   }
+
+   /**
+    * Returns the order in which shapes should be offered to this packer.
+    */
+   protected Comparator<Shape> order() {
+      return ColumnBuilder.LargestFirst;
+   }
+
+   /**
+    * Starts filling a new, empty resource.
+    */
+   protected void start() {
+      column = new Column(problem);
+   }
+
+   /**
+    * Places the given shape on the resource that is being filled, and returns whether it fitted.
+    */
+   protected abstract boolean place(Shape s);
+
+   /**
+    * Returns the column of the resource that was being filled.
+    */
+   protected Column finish() {
+      return column;
+   }
+
+   /**
+    * Returns the packers used to find initial columns, of which only the shelf packer yields guillotine patterns.
+    */
+   public static Packer[] all(Problem problem, boolean guillotine) {
+      if(guillotine)
+         return new Packer[]{ new ShelfPacker(problem) };
+      return new Packer[]{ new ShelfPacker(problem), new MaxRectsPacker(problem), new SkylinePacker(problem) };
+   }
+}
@@ -0,0 +1,309 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * PatternCache.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the arrangements of multisets of shapes across runs, in a compact binary file, for every size of resource and
+ * cutting loss. Shapes are identified by their size rather than their id, so the patterns of one problem serve any later
+ * problem with the same resources and some of the same shapes: solvers seed their FeasibilityCache and their lp from it,
+ * and record what they found in it once they are done. Only feasible patterns are kept, as a multiset that was found to
+ * be infeasible may merely have run out of search budget, which should not bind later runs.
+ * The file holds at most a given number of patterns, dropping the least recently recorded ones, and is locked while it is
+ * read or written, so concurrent processes can share it. Within a process, open() hands out a single cache per file.
+ */
+public class PatternCache {
+   /**
+    * An arrangement of shapes on a resource of a given size. Every shape is stored with its shortest side as its width,
+    * as {width, height, x, y, turn}.
+    */
+   protected static class Pattern {
+      protected final int    width, height, loss;
+      protected final int[]  shapes;
+      protected final String key;
+
+      protected Pattern(int width, int height, int loss, int shapes[]) {
+         this.width  = width;
+         this.height = height;
+         this.loss   = loss;
+         this.shapes = shapes;
+         long[] sizes = new long[shapes.length / 5];
+         for(int i = 0; i < sizes.length; i++) {
+            sizes[i] = ((long) shapes[5 * i] << 32) | shapes[5 * i + 1];
+         }
+         Arrays.sort(sizes);
+         this.key = width + "x" + height + "/" + loss + Arrays.toString(sizes);
+      }
+   }
+
+   protected final static int Magic = 0x43535043, Version = 2;
+
+   public final static int DefaultCapacity = 1 << 16;
+
+   /**
+    * Number of newly recorded patterns after which the file is written again.
+    */
+   protected final static int SaveInterval = 4096;
+
+   protected final static ConcurrentHashMap<File, PatternCache> open = new ConcurrentHashMap<File, PatternCache>();
+
+   protected final File                            file;
+   protected final int                             capacity;
+   protected final LinkedHashMap<String, Pattern>  patterns = new LinkedHashMap<String, Pattern>();
+   protected int                                   unsaved  = 0;
+
+   public PatternCache(File file, int capacity) {
+      this.file     = file;
+      this.capacity = capacity;
+   }
+
+   /**
+    * Returns the cache backed by the given file, which is read the first time and written when the program ends.
+    */
+   public static PatternCache open(File file) {
+      return open.computeIfAbsent(file.getAbsoluteFile(), (File f) -> {
+         PatternCache cache = new PatternCache(f, DefaultCapacity);
+         try {
+            cache.load();
+         }
+         catch(IOException ex) {
+            Logger.warning("Could not read the pattern cache " + f + ": " + ex.getMessage()).println();
+         }
+         Runtime.getRuntime().addShutdownHook(new Thread(cache::trySave));
+         return cache;
+      });
+   }
+
+   /**
+    * Adds the patterns in the file to those in memory, which take precedence.
+    */
+   public synchronized void load() throws IOException {
+      if(!file.exists())
+         return;
+      try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+         FileLock lock = raf.getChannel().lock(0L, Long.MAX_VALUE, true);
+         try {
+            merge(read(Channels.newInputStream(raf.getChannel()), raf.length()));
+         }
+         finally {
+            lock.release();
+         }
+      }
+   }
+
+   /**
+    * Writes the patterns to the file, after merging in the ones other processes have written to it in the mean time.
+    */
+   public synchronized void save() throws IOException {
+      File dir = file.getAbsoluteFile().getParentFile();
+      if(dir != null)
+         dir.mkdirs();
+      try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+         FileChannel channel = raf.getChannel();
+         FileLock    lock    = channel.lock();
+         try {
+            if(channel.size() > 0L) {
+               try {
+                  merge(read(Channels.newInputStream(channel), channel.size()));
+               }
+               catch(IOException ex) {
+                  Logger.warning("Replacing the unreadable pattern cache " + file + ": " + ex.getMessage()).println();
+               }
+            }
+            channel.truncate(0L);
+            channel.position(0L);
+            write(Channels.newOutputStream(channel));
+            unsaved = 0;
+         }
+         finally {
+            lock.release();
+         }
+      }
+   }
+
+   /**
+    * Adds the given patterns to those in memory, which take precedence.
+    */
+   protected void merge(LinkedHashMap<String, Pattern> ps) {
+      for(Pattern p : patterns.values()) {
+         ps.remove(p.key);
+         ps.put(p.key, p);
+      }
+      patterns.clear();
+      patterns.putAll(ps);
+      trim();
+   }
+
+   protected void trySave() {
+      try {
+         synchronized(this) {
+            if(unsaved == 0)
+               return;
+         }
+         save();
+      }
+      catch(IOException ex) {
+         Logger.warning("Could not write the pattern cache " + file + ": " + ex.getMessage()).println();
+      }
+   }
+
+   /**
+    * Reads the patterns from the given stream, which holds the given number of bytes. Counts that do not fit in the
+    * remaining bytes show the file is corrupt, and are reported as such rather than allocated.
+    */
+   protected static LinkedHashMap<String, Pattern> read(InputStream stream, long length) throws IOException {
+      LinkedHashMap<String, Pattern> ps = new LinkedHashMap<String, Pattern>();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+      if(in.readInt() != Magic || in.readInt() != Version)
+         throw new IOException("Not a pattern cache, or one of another version");
+      // Every pattern takes four integers besides its shapes, and every shape takes five
+      long left = length - 12L;
+      int  n    = in.readInt();
+      if(n < 0 || 16L * n > left)
+         throw new IOException("Corrupt pattern cache: " + n + " patterns in " + length + " bytes");
+      for(; n > 0; n--) {
+         int width  = in.readInt(),
+             height = in.readInt(),
+             loss   = in.readInt(),
+             m      = in.readInt();
+         left -= 16L;
+         if(m < 0 || 20L * m > left)
+            throw new IOException("Corrupt pattern cache: " + m + " shapes in " + left + " bytes");
+         left -= 20L * m;
+         int[] shapes = new int[5 * m];
+         for(int i = 0; i < shapes.length; i++) {
+            shapes[i] = in.readInt();
+         }
+         Pattern p = new Pattern(width, height, loss, shapes);
+         ps.put(p.key, p);
+      }
+      return ps;
+   }
+
+   protected void write(OutputStream stream) throws IOException {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(Magic);
+      out.writeInt(Version);
+      out.writeInt(patterns.size());
+      for(Pattern p : patterns.values()) {
+         out.writeInt(p.width);
+         out.writeInt(p.height);
+         out.writeInt(p.loss);
+         out.writeInt(p.shapes.length / 5);
+         for(int v : p.shapes) {
+            out.writeInt(v);
+         }
+      }
+      out.flush();
+   }
+
+   /**
+    * Drops the least recently recorded patterns beyond the capacity.
+    */
+   protected void trim() {
+      Iterator<Pattern> it = patterns.values().iterator();
+      for(int n = patterns.size() - capacity; n > 0; n--) {
+         it.next();
+         it.remove();
+      }
+   }
+
+   /**
+    * Puts every known pattern for the resources of the given problem into the given cache, restricted to the shapes the
+    * problem holds, and returns their arrangements.
+    */
+   public synchronized ArrayList<Column> seed(Problem problem, FeasibilityCache cache) {
+      HashMap<Long, Shape> shapes = new HashMap<Long, Shape>();
+      for(RequiredShape rs : problem.shapes) {
+         shapes.put(size(rs.shape().width, rs.shape().height), rs.shape());
+      }
+      LinkedHashMap<ShapeCounts, Column> columns = new LinkedHashMap<ShapeCounts, Column>();
+      for(Pattern p : patterns.values()) {
+         if(p.width != problem.resourceWidth || p.height != problem.resourceHeight || p.loss != problem.cuttingLoss)
+            continue;
+         Column c = new Column(problem, p.shapes.length / 5);
+         for(int i = 0; i < p.shapes.length; i += 5) {
+            Shape s = shapes.get(size(p.shapes[i], p.shapes[i + 1]));
+            // Shapes are stored with their shortest side as their width, so others are turned the other way
+            if(s != null && !c.push(p.shapes[i + 2], p.shapes[i + 3], (p.shapes[i + 4] != 0) != (s.width > s.height), s)) {
+               c = null;
+               break;
+            }
+         }
+         if(c != null && c.size() > 0 && !columns.containsKey(c.counts())) {
+            columns.put(c.counts(), c);
+            cache.putFeasible(c.counts(), c);
+         }
+      }
+      return new ArrayList<Column>(columns.values());
+   }
+
+   /**
+    * Records every feasible pattern in the given cache, which belongs to the given problem.
+    */
+   public synchronized void record(Problem problem, FeasibilityCache cache) {
+      cache.forEach((ShapeCounts key, Column column) -> {
+         if(column == null)
+            return;
+         Pattern p = pattern(problem, column);
+         if(patterns.remove(p.key) == null)
+            unsaved++;
+         patterns.put(p.key, p);
+      });
+      trim();
+      if(unsaved >= SaveInterval)
+         trySave();
+   }
+
+   protected static Pattern pattern(Problem problem, Column column) {
+      int[] shapes = new int[5 * column.size()];
+      for(int i = 0; i < column.size(); i++) {
+         Shape s = column.shape(i);
+         shapes[5 * i]     = Math.min(s.width, s.height);
+         shapes[5 * i + 1] = Math.max(s.width, s.height);
+         shapes[5 * i + 2] = column.xs[i];
+         shapes[5 * i + 3] = column.ys[i];
+         shapes[5 * i + 4] = (column.turns.get(i) != (s.width > s.height) ? 1 : 0);
+      }
+      return new Pattern(problem.resourceWidth, problem.resourceHeight, problem.cuttingLoss, shapes);
+   }
+
+   protected static long size(int width, int height) {
+      return ((long) Math.min(width, height) << 32) | Math.max(width, height);
+   }
+}
@@ -0,0 +1,42 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * Pricer.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Set;
+
+public interface Pricer {
+   /**
+    * Returns at most max columns with a negative reduced cost for the given duals, the most negative one first, or an
+    * empty array if none could be found. Columns holding exactly one of the excluded multisets of shapes are skipped.
+    */
+   public Column[] price(double duals[], int max, Set<ShapeCounts> excluded);
+
+   /**
+    * Returns an upper bound on the sum of the duals of any column, for the duals given to the last call of price, or
+    * infinity if no such bound is known.
+    */
+   public double bound();
+
+   /**
+    * Returns whether the last call of price considered every column that could improve on the ones it returned, so that
+    * if it returned none, no column besides the excluded ones has a negative reduced cost.
+    */
+   public boolean exhaustive();
+}
@@ -19,53 +19,69 @@
 
 package cuttingstock;
 
-import dvrlib.generic.Pair;
-import java.util.regex.Pattern;
-import java.util.Scanner;
-import java.util.Vector;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 
 public class Problem {
-   public final static Pattern Comment = Pattern.compile("^#.*");
-
    protected int cuttingLoss    = 0,
                  resourceWidth  = 0,
                  resourceHeight = 0,
-                 resourceSize   = 0;
-   protected final Vector<RequiredShape> shapes = new Vector<RequiredShape>();
+                 resourceSize   = 0,
+                 minimumSide    = Integer.MAX_VALUE;
+   protected final ArrayList<RequiredShape> shapes = new ArrayList<RequiredShape>();
 
    public Problem(java.io.File file) {
-      try {
-         Logger.info("Problem:").inBoldYellow().println();
-
-         Scanner in = new Scanner(file), line = new Scanner(in.nextLine());
-         // Skip comments
-         while(line.hasNext(Comment))
-            line = new Scanner(in.nextLine());
-         // Read resource size
-         cuttingLoss = line.nextInt();
-         Logger.info("   Cutting loss: " + cuttingLoss).println();
-
-         resourceWidth  = line.nextInt();
-         resourceHeight = line.nextInt();
-         resourceSize   = resourceWidth * resourceHeight;
-         Logger.info("   Resources: " + resourceWidth + "x" + resourceHeight).println();
-
-         int id = 1;
-         Logger.info("   Shapes:").println();
-         while(in.hasNext()) {
-            line = new Scanner(in.nextLine());
-            if(!line.hasNext(Comment)) {
-               int c = line.nextInt(),
-                   w = line.nextInt(),
-                   h = line.nextInt();
-               String n = line.hasNext() ? line.nextLine().trim() : "";
-               Logger.info("      " + c + " * " + w + "x" + h + ":\t" + n).println();
-               shapes.add(new RequiredShape(new Shape(id++, w, h, n), c));
-            }
-         }
+      try(InputStream in = new FileInputStream(file)) {
+         read(in, file.getPath());
       }
       catch(java.io.FileNotFoundException ex) {
          Logger.error("Indicated problem file not found").println();
       }
+      catch(IOException ex) {
+         throw new UncheckedIOException("Reading " + file + " failed", ex);
+      }
+   }
+
+   /**
+    * Creates a problem without any shapes, which are added by a ProblemReader.
+    */
+   protected Problem(int cuttingLoss, int resourceWidth, int resourceHeight) {
+      this.cuttingLoss    = cuttingLoss;
+      this.resourceWidth  = resourceWidth;
+      this.resourceHeight = resourceHeight;
+      this.resourceSize   = resourceWidth * resourceHeight;
+   }
+
+   /**
+    * Reads a problem from the given stream, which is named by the given source in errors, and left open.
+    */
+   public Problem(InputStream in, String source) throws IOException {
+      read(in, source);
+   }
+
+   protected void read(InputStream in, String source) throws IOException {
+      Logger.info("Problem:").inBoldYellow().println();
+      new ProblemReader(in, source).read(this);
+
+      Logger.info("   Cutting loss: " + cuttingLoss).println();
+      Logger.info("   Resources: " + resourceWidth + "x" + resourceHeight).println();
+      Logger.info("   Shapes:").println();
+      for(RequiredShape rs : shapes) {
+         Logger.info("      " + rs.count() + " * " + rs.shape().width + "x" + rs.shape().height + ":\t" + rs.shape().name).println();
+      }
+   }
+
+   public Shape shape(int id) {
+      return shapes.get(id - 1).shape();
+   }
+
+   /**
+    * Returns the number of shapes that need to be cut, counting every copy.
+    */
+   public int totalDemand() {
+      return shapes.stream().mapToInt(RequiredShape::count).sum();
    }
 }
@@ -0,0 +1,274 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * ProblemReader.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a problem from plain text, byte by byte from a buffer, without regular expressions or a scanner per line.
+ * Lines for shapes of the same size, also when one is turned, are merged into a single shape needed as often as all of
+ * them together. Errors are reported as an IllegalArgumentException that names the line and column at which they occur.
+ * Problems can be read from parsed JSON objects as well, see Json.
+ */
+public class ProblemReader {
+   protected final static int BufferSize = 1 << 16;
+
+   protected final InputStream in;
+   protected final String      source;
+   protected final byte[]      buffer = new byte[BufferSize];
+   protected byte[]            text   = new byte[64];
+   protected int               length = 0, position = 0, line = 1, column = 1;
+
+   // The shapes read so far, keyed by their smallest and largest side, in order of their first line
+   protected final HashMap<Long, Integer> index  = new HashMap<Long, Integer>();
+   protected final ArrayList<int[]>       sizes  = new ArrayList<int[]>();
+   protected final ArrayList<String>      names  = new ArrayList<String>();
+   protected int[]                        counts = new int[16];
+
+   public ProblemReader(InputStream in, String source) {
+      this.in     = in;
+      this.source = source;
+   }
+
+   /**
+    * Reads the cutting loss, the size of the resources and the shapes into the given problem.
+    */
+   public void read(Problem problem) throws IOException {
+      if(!skipEmptyLines())
+         throw error("Missing the cutting loss and the size of the resources");
+      problem.cuttingLoss    = readInt("cutting loss", 0);
+      problem.resourceWidth  = readInt("resource width", 1);
+      problem.resourceHeight = readInt("resource height", 1);
+      problem.resourceSize   = problem.resourceWidth * problem.resourceHeight;
+      endLine();
+
+      while(skipEmptyLines()) {
+         int    c = readInt("count", 0),
+                w = readInt("width", 1),
+                h = readInt("height", 1);
+         String n = readName();
+         add(c, w, h, n);
+      }
+      finish(problem);
+   }
+
+   /**
+    * Reads a problem from a parsed JSON object, holding the cutting loss, width and height of the resources, and an array
+    * of shapes, each with a count, width, height and optionally a name.
+    */
+   public static Problem read(Map<?, ?> json, String source) {
+      ProblemReader reader  = new ProblemReader(null, source);
+      Problem       problem = new Problem(reader.integer(json, "cuttingLoss", 0, 0),
+                                          reader.integer(json, "width", 1, -1),
+                                          reader.integer(json, "height", 1, -1));
+      if(!(json.get("shapes") instanceof List))
+         throw reader.error("Missing the array of shapes");
+      for(Object o : (List<?>) json.get("shapes")) {
+         if(!(o instanceof Map))
+            throw reader.error("Every shape should be an object");
+         Map<?, ?> shape = (Map<?, ?>) o;
+         reader.add(reader.integer(shape, "count", 0, -1),
+                    reader.integer(shape, "width", 1, -1),
+                    reader.integer(shape, "height", 1, -1),
+                    (shape.get("name") == null ? "" : shape.get("name").toString().trim()));
+      }
+      reader.finish(problem);
+      return problem;
+   }
+
+   /**
+    * Returns the integer of at least the given minimum under the given key, or the default if it is absent and the
+    * default is not negative.
+    */
+   protected int integer(Map<?, ?> json, String key, int min, int def) {
+      Object v = json.get(key);
+      if(v == null && def >= 0)
+         return def;
+      if(!(v instanceof Number) || ((Number) v).doubleValue() != Math.rint(((Number) v).doubleValue()))
+         throw error("Expected an integer " + key);
+      double d = ((Number) v).doubleValue();
+      if(d < min || d > Integer.MAX_VALUE)
+         throw error("The " + key + " should be an integer of at least " + min);
+      return (int) d;
+   }
+
+   /**
+    * Adds the shapes read so far to the given problem.
+    */
+   protected void finish(Problem problem) {
+      for(int i = 0, id = 1; i < sizes.size(); i++) {
+         if(counts[i] > 0) {
+            int[] s = sizes.get(i);
+            problem.shapes.add(new RequiredShape(new Shape(id++, s[0], s[1], names.get(i)), counts[i]));
+            problem.minimumSide = Math.min(problem.minimumSide, Math.min(s[0], s[1]));
+         }
+      }
+   }
+
+   /**
+    * Adds the given number of copies of a shape, merging them with an earlier shape of the same size.
+    */
+   protected void add(int count, int width, int height, String name) {
+      long    key = ((long) Math.min(width, height) << 32) | Math.max(width, height);
+      Integer i   = index.get(key);
+      if(i == null) {
+         i = sizes.size();
+         index.put(key, i);
+         sizes.add(new int[]{ width, height });
+         names.add(name);
+         if(i == counts.length)
+            counts = Arrays.copyOf(counts, 2 * i);
+      }
+      else if(!name.isEmpty() && !Arrays.asList(names.get(i).split("/")).contains(name))
+         names.set(i, names.get(i).isEmpty() ? name : names.get(i) + "/" + name);
+      if(counts[i] > Integer.MAX_VALUE - count)
+         throw error("Total count of " + width + "x" + height + " shapes is too large");
+      counts[i] += count;
+   }
+
+   /**
+    * Returns the next byte without consuming it, or -1 at the end of the input.
+    */
+   protected int peek() throws IOException {
+      if(position == length) {
+         length   = Math.max(0, in.read(buffer, 0, buffer.length));
+         position = 0;
+         if(length == 0)
+            return -1;
+      }
+      return buffer[position] & 0xFF;
+   }
+
+   /**
+    * Consumes and returns the next byte, or -1 at the end of the input.
+    */
+   protected int next() throws IOException {
+      int b = peek();
+      if(b >= 0) {
+         position++;
+         if(b == '\n') {
+            line++;
+            column = 1;
+         }
+         else
+            column++;
+      }
+      return b;
+   }
+
+   protected static boolean isSpace(int b) {
+      return (b == ' ' || b == '\t' || b == '\r' || b == '\f');
+   }
+
+   protected void skipSpaces() throws IOException {
+      while(isSpace(peek())) {
+         next();
+      }
+   }
+
+   /**
+    * Skips empty lines and comments, i.e. lines whose first non-space character is a #, and returns whether anything is
+    * left to read.
+    */
+   protected boolean skipEmptyLines() throws IOException {
+      while(true) {
+         skipSpaces();
+         int b = peek();
+         if(b == '#')
+            skipLine();
+         else if(b == '\n')
+            next();
+         else
+            return (b >= 0);
+      }
+   }
+
+   protected void skipLine() throws IOException {
+      for(int b = next(); b >= 0 && b != '\n'; b = next());
+   }
+
+   /**
+    * Consumes the end of the current line, which may only hold spaces or a comment.
+    */
+   protected void endLine() throws IOException {
+      skipSpaces();
+      int b = peek();
+      if(b >= 0 && b != '\n' && b != '#')
+         throw error("Unexpected character '" + (char) b + "'");
+      skipLine();
+   }
+
+   /**
+    * Reads a non-negative integer of at least the given minimum, preceded by spaces on the same line.
+    */
+   protected int readInt(String what, int min) throws IOException {
+      skipSpaces();
+      int b = peek();
+      if(b < '0' || b > '9')
+         throw error(b < 0 || b == '\n' ? "Missing " + what : "Expected the " + what + ", found '" + (char) b + "'");
+      int l = line, c = column;
+      long v = 0L;
+      for(; b >= '0' && b <= '9'; b = peek()) {
+         v = 10L * v + (b - '0');
+         if(v > Integer.MAX_VALUE)
+            throw error(l, c, "The " + what + " is too large");
+         next();
+      }
+      if(b >= 0 && !isSpace(b) && b != '\n')
+         throw error("Expected the " + what + " to end, found '" + (char) b + "'");
+      if(v < min)
+         throw error(l, c, "The " + what + " should be at least " + min);
+      return (int) v;
+   }
+
+   /**
+    * Reads the remainder of the current line as a name, without leading and trailing spaces.
+    */
+   protected String readName() throws IOException {
+      skipSpaces();
+      int n = 0;
+      for(int b = next(); b >= 0 && b != '\n'; b = next()) {
+         if(n == text.length)
+            text = Arrays.copyOf(text, 2 * n);
+         text[n++] = (byte) b;
+      }
+      while(n > 0 && isSpace(text[n - 1])) {
+         n--;
+      }
+      return new String(text, 0, n, StandardCharsets.UTF_8);
+   }
+
+   protected IllegalArgumentException error(String message) {
+      if(in == null)
+         return new IllegalArgumentException(source + ": " + message);
+      return error(line, column, message);
+   }
+
+   protected IllegalArgumentException error(int line, int column, String message) {
+      return new IllegalArgumentException(source + ":" + line + ":" + column + ": " + message);
+   }
+}
@@ -0,0 +1,126 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * ShapeCounts.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Arrays;
+
+/**
+ * An immutable multiset of shapes, stored as the ascending ids of the shapes it contains and the number of copies of each.
+ */
+public class ShapeCounts {
+   protected final int[] ids, counts;
+   protected final int   hash, total;
+
+   protected ShapeCounts(int ids[], int counts[]) {
+      this.ids    = ids;
+      this.counts = counts;
+      this.hash   = 31 * Arrays.hashCode(ids) + Arrays.hashCode(counts);
+      this.total  = Arrays.stream(counts).sum();
+   }
+
+   public static ShapeCounts of(Shape shapes[]) {
+      return of(Arrays.stream(shapes).mapToInt((Shape s) -> s.id).toArray(), shapes.length);
+   }
+
+   /**
+    * Returns the multiset of the shapes with the first n of the given ids, which are left untouched.
+    */
+   public static ShapeCounts of(int shapeIds[], int n) {
+      int[] sorted = Arrays.copyOf(shapeIds, n),
+            ids    = new int[n],
+            counts = new int[n];
+      int   m      = 0;
+      Arrays.sort(sorted);
+      for(int i = 0; i < n; i++) {
+         if(m > 0 && ids[m - 1] == sorted[i])
+            counts[m - 1]++;
+         else {
+            ids[m]    = sorted[i];
+            counts[m] = 1;
+            m++;
+         }
+      }
+      return new ShapeCounts(Arrays.copyOf(ids, m), Arrays.copyOf(counts, m));
+   }
+
+   /**
+    * Returns the number of copies of the shape with the given id.
+    */
+   public int count(int id) {
+      int i = Arrays.binarySearch(ids, id);
+      return (i < 0 ? 0 : counts[i]);
+   }
+
+   /**
+    * Returns the total number of shapes.
+    */
+   public int total() {
+      return total;
+   }
+
+   /**
+    * Returns the counts as a dense vector over the ids 1 to n, holding the count of the shape with id i at index i - 1.
+    */
+   public double[] vector(int n) {
+      double[] v = new double[n];
+      for(int i = 0; i < ids.length; i++) {
+         v[ids[i] - 1] = counts[i];
+      }
+      return v;
+   }
+
+   /**
+    * Returns whether this multiset contains every shape of the given one at least as often.
+    */
+   public boolean contains(ShapeCounts that) {
+      if(that.total > total || that.ids.length > ids.length)
+         return false;
+      for(int i = 0, j = 0; j < that.ids.length; j++) {
+         while(i < ids.length && ids[i] < that.ids[j]) {
+            i++;
+         }
+         if(i == ids.length || ids[i] != that.ids[j] || counts[i] < that.counts[j])
+            return false;
+      }
+      return true;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if(!(o instanceof ShapeCounts))
+         return false;
+      ShapeCounts that = (ShapeCounts) o;
+      return (hash == that.hash && Arrays.equals(ids, that.ids) && Arrays.equals(counts, that.counts));
+   }
+
+   @Override
+   public int hashCode() {
+      return hash;
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder("{");
+      for(int i = 0; i < ids.length; i++) {
+         sb.append(i == 0 ? "" : ", ").append(counts[i]).append(" * #").append(ids[i]);
+      }
+      return sb.append("}").toString();
+   }
+}
@@ -0,0 +1,92 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * ShelfPacker.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Comparator;
+
+/**
+ * First fit decreasing shelf packing: shapes are laid flat in order of decreasing height, each on the first shelf that
+ * still has room for it, and a new shelf is opened on top of the others when none has. Every shelf is a strip of the
+ * resource, so the resulting patterns can be cut in two stages of guillotine cuts.
+ */
+public class ShelfPacker extends Packer {
+   protected CutTree sheet;
+
+   public ShelfPacker(Problem problem) {
+      super(problem);
+   }
+
+   @Override
+   protected Comparator<Shape> order() {
+      return Comparator.comparingInt((Shape s) -> -flatHeight(s)).thenComparing(ColumnBuilder.LargestFirst);
+   }
+
+   @Override
+   protected void start() {
+      super.start();
+      sheet = new CutTree(false, problem.cuttingLoss);
+   }
+
+   @Override
+   protected boolean place(Shape s) {
+      // Prefer the orientation in which the shape is lowest
+      boolean flat = (s.width >= s.height);
+      for(boolean turn : new boolean[]{ !flat, flat }) {
+         int w = (turn ? s.height : s.width),
+             h = (turn ? s.width  : s.height);
+         if(w > problem.resourceWidth)
+            continue;
+         for(CutTree shelf : sheet.parts) {
+            if(h <= shelf.height && shelf.width + problem.cuttingLoss + w <= problem.resourceWidth) {
+               shelf.add(new CutTree(s, turn));
+               return true;
+            }
+         }
+      }
+      for(boolean turn : new boolean[]{ !flat, flat }) {
+         int w = (turn ? s.height : s.width),
+             h = (turn ? s.width  : s.height);
+         if(w <= problem.resourceWidth && (sheet.isEmpty() ? h : sheet.height + problem.cuttingLoss + h) <= problem.resourceHeight) {
+            CutTree shelf = new CutTree(true, problem.cuttingLoss);
+            shelf.add(new CutTree(s, turn));
+            sheet.add(shelf);
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   protected Column finish() {
+      if(!sheet.isEmpty()) {
+         if(!sheet.place(column, 0, 0))
+            throw new IllegalStateException("Shelf pattern does not fit: " + sheet);
+         column.cuts = sheet;
+      }
+      return column;
+   }
+
+   /**
+    * Returns the height of the given shape when it is laid flat on a resource, or its height if it cannot be.
+    */
+   protected int flatHeight(Shape s) {
+      return (Math.max(s.width, s.height) <= problem.resourceWidth ? Math.min(s.width, s.height) : s.height);
+   }
+}
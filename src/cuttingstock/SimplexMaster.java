@@ -0,0 +1,467 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * SimplexMaster.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Master problem solved by a bounded revised simplex method in plain Java.
+ * The master problems of this solver have a row per shape and many dense columns, so the inverse of the basis is kept as
+ * a dense matrix and updated after every pivot. Every row has a surplus variable, turning its inequality into an
+ * equality, and an artificial variable with a prohibitive cost, which together provide a feasible basis to start from.
+ * Adding columns keeps the basis feasible, so solving again continues from the previous basis; changing bounds or
+ * right-hand sides only restarts from scratch if the previous basis became infeasible.
+ */
+public class SimplexMaster implements MasterProblem {
+   protected static class Variable {
+      protected final double[] coefficients;
+      protected       double   cost, lower, upper, value;
+      protected       int      row = -1; // Row of the basis in which this variable is basic, or -1 if it is nonbasic
+
+      protected Variable(double cost, double coefficients[]) {
+         this.cost         = cost;
+         this.coefficients = coefficients;
+         this.lower        = 0d;
+         this.upper        = Double.POSITIVE_INFINITY;
+         this.value        = 0d;
+      }
+
+      protected boolean atUpper() {
+         return row < 0 && !Double.isInfinite(upper) && value >= upper;
+      }
+   }
+
+   protected final static double Tolerance        = 1e-9;
+   protected final static double PivotTolerance   = 1e-7;
+   protected final static double BigM             = 1e6;
+   protected final static int    RefactorInterval = 64;
+   protected final static int    DegenerateLimit  = 50;
+   protected final static int    MaxIterations    = 100000;
+
+   protected final int                 rows;
+   protected final double[]            rhs;
+   protected final int[]               head;
+   protected final ArrayList<Variable> vars = new ArrayList<Variable>(); // Artificials, surplus variables, columns
+
+   protected double[][] inverse;
+   protected double[]   duals;
+   protected boolean    cold       = true, dirty = false;
+   protected long       iterations = 0L;
+   protected int        pivots     = 0;
+
+   public SimplexMaster(double rhs[]) {
+      this.rows    = rhs.length;
+      this.rhs     = rhs.clone();
+      this.head    = new int[rows];
+      this.inverse = new double[rows][rows];
+      this.duals   = new double[rows];
+      for(int sign = 1; sign >= -1; sign -= 2) {
+         for(int i = 0; i < rows; i++) {
+            double[] a = new double[rows];
+            a[i] = sign;
+            vars.add(new Variable(0d, a));
+         }
+      }
+   }
+
+   //--- cuttingstock.MasterProblem
+   @Override
+   public int addColumn(double cost, double coefficients[]) {
+      // The new column is nonbasic at its lower bound of zero, so the current basis stays feasible
+      vars.add(new Variable(cost, Arrays.copyOf(coefficients, rows)));
+      return vars.size() - 2 * rows - 1;
+   }
+
+   @Override
+   public void deleteColumn(int column) {
+      int      v   = 2 * rows + column;
+      Variable var = vars.remove(v);
+      if(var.row >= 0)
+         cold = true;
+      else if(var.value != 0d)
+         dirty = true;
+      for(int r = 0; r < rows; r++) {
+         if(head[r] > v)
+            head[r]--;
+      }
+   }
+
+   @Override
+   public int columns() {
+      return vars.size() - 2 * rows;
+   }
+
+   @Override
+   public int rows() {
+      return rows;
+   }
+
+   @Override
+   public void setBounds(int column, double lower, double upper) {
+      Variable var = vars.get(2 * rows + column);
+      var.lower = lower;
+      var.upper = upper;
+      dirty     = true;
+   }
+
+   @Override
+   public double lower(int column) {
+      return vars.get(2 * rows + column).lower;
+   }
+
+   @Override
+   public double upper(int column) {
+      return vars.get(2 * rows + column).upper;
+   }
+
+   @Override
+   public void setRhs(int row, double value) {
+      rhs[row] = value;
+      dirty    = true;
+   }
+
+   @Override
+   public double rhs(int row) {
+      return rhs[row];
+   }
+
+   @Override
+   public Status solve() {
+      iterations = 0L;
+      if(cold)
+         coldStart();
+      else if(dirty)
+         restart();
+
+      for(int degenerate = 0; ; ) {
+         if(iterations++ > MaxIterations)
+            return Status.FAILED;
+         if(pivots >= RefactorInterval && !refactor())
+            coldStart();
+         computeDuals();
+
+         // Choose the entering variable by the largest reduced cost, or by the lowest index when the method stalls
+         int    q = -1, dir = 0;
+         double best = Tolerance;
+         for(int j = 0; j < vars.size(); j++) {
+            Variable var = vars.get(j);
+            if(var.row >= 0 || var.upper - var.lower <= Tolerance)
+               continue;
+            double d = reducedCost(var);
+            if(d < -best && !var.atUpper() || d > best && var.atUpper()) {
+               q    = j;
+               dir  = (d < 0d ? 1 : -1);
+               best = Math.abs(d);
+               if(degenerate > DegenerateLimit)
+                  break;
+            }
+         }
+         if(q < 0) {
+            if(!driveOutArtificials())
+               return feasible() ? Status.OPTIMAL : Status.INFEASIBLE;
+            continue;
+         }
+
+         // Ratio test: the entering variable moves until it reaches its other bound, or a basic variable reaches one
+         Variable entering = vars.get(q);
+         double[] w        = multiply(entering.coefficients);
+         double   t        = entering.upper - entering.lower;
+         int      r        = -1;
+         for(int i = 0; i < rows; i++) {
+            Variable b     = vars.get(head[i]);
+            double   wi    = dir * w[i],
+                     limit;
+            if(wi > PivotTolerance)
+               limit = (b.value - b.lower) / wi;
+            else if(wi < -PivotTolerance && !Double.isInfinite(b.upper))
+               limit = (b.upper - b.value) / -wi;
+            else
+               continue;
+            // Among ties, prefer the largest pivot element for numerical stability
+            if(limit < t - Tolerance || (limit < t + Tolerance && r >= 0 && Math.abs(wi) > Math.abs(w[r]))) {
+               t = Math.min(t, limit);
+               r = i;
+            }
+         }
+         if(Double.isInfinite(t))
+            return Status.UNBOUNDED;
+         t = Math.max(0d, t);
+         degenerate = (t <= Tolerance ? degenerate + 1 : 0);
+
+         entering.value += dir * t;
+         for(int i = 0; i < rows; i++) {
+            vars.get(head[i]).value -= dir * t * w[i];
+         }
+         if(r >= 0) {
+            Variable leaving = vars.get(head[r]);
+            leaving.value = (dir * w[r] > 0d ? leaving.lower : leaving.upper);
+            leaving.row   = -1;
+            pivot(r, q, w);
+         }
+         else {
+            // The entering variable merely moved to its other bound
+            entering.value = (dir > 0 ? entering.upper : entering.lower);
+         }
+      }
+   }
+
+   @Override
+   public double objective() {
+      double z = 0d;
+      for(int j = 2 * rows; j < vars.size(); j++) {
+         z += vars.get(j).cost * vars.get(j).value;
+      }
+      return z;
+   }
+
+   @Override
+   public double[] primal() {
+      double[] x = new double[columns()];
+      for(int j = 0; j < x.length; j++) {
+         x[j] = vars.get(2 * rows + j).value;
+      }
+      return x;
+   }
+
+   @Override
+   public double[] duals() {
+      return duals.clone();
+   }
+
+   @Override
+   public long iterations() {
+      return iterations;
+   }
+
+   //--- java.lang.AutoCloseable
+   @Override
+   public void close() {
+   }
+
+   /**
+    * Starts from the basis of artificial and surplus variables, with all columns at their lower bounds.
+    */
+   protected void coldStart() {
+      double maxCost = 0d;
+      for(int j = 2 * rows; j < vars.size(); j++) {
+         maxCost = Math.max(maxCost, Math.abs(vars.get(j).cost));
+      }
+      for(int j = 0; j < vars.size(); j++) {
+         Variable var = vars.get(j);
+         var.row   = -1;
+         var.value = var.lower;
+         if(j < rows) {
+            var.cost  = BigM * (1d + maxCost);
+            var.upper = Double.POSITIVE_INFINITY;
+         }
+      }
+
+      double[] residual = residual();
+      for(int i = 0; i < rows; i++) {
+         Arrays.fill(inverse[i], 0d);
+         // The artificial variable covers a positive residual, the surplus variable absorbs a negative one
+         head[i]       = (residual[i] >= 0d ? i : rows + i);
+         inverse[i][i] = (residual[i] >= 0d ? 1d : -1d);
+         vars.get(head[i]).row   = i;
+         vars.get(head[i]).value = Math.abs(residual[i]);
+      }
+      cold   = false;
+      dirty  = false;
+      pivots = 0;
+   }
+
+   /**
+    * Moves every nonbasic variable to one of its bounds and computes the basic variables again, starting from scratch if
+    * that makes the basis infeasible.
+    */
+   protected void restart() {
+      for(Variable var : vars) {
+         if(var.row < 0)
+            var.value = (!Double.isInfinite(var.upper) && var.value >= var.upper ? var.upper : var.lower);
+      }
+      if(!refactor())
+         coldStart();
+      for(int i = 0; i < rows; i++) {
+         Variable b = vars.get(head[i]);
+         if(b.value < b.lower - PivotTolerance || b.value > b.upper + PivotTolerance) {
+            coldStart();
+            break;
+         }
+      }
+      dirty = false;
+   }
+
+   /**
+    * Computes the inverse of the basis anew by Gauss-Jordan elimination, along with the values of the basic variables, and
+    * returns whether the basis is nonsingular.
+    */
+   protected boolean refactor() {
+      double[][] b = new double[rows][2 * rows];
+      for(int i = 0; i < rows; i++) {
+         for(int r = 0; r < rows; r++) {
+            b[r][i] = vars.get(head[i]).coefficients[r];
+         }
+         b[i][rows + i] = 1d;
+      }
+      for(int c = 0; c < rows; c++) {
+         int p = c;
+         for(int r = c + 1; r < rows; r++) {
+            if(Math.abs(b[r][c]) > Math.abs(b[p][c]))
+               p = r;
+         }
+         if(Math.abs(b[p][c]) < PivotTolerance)
+            return false;
+         double[] t = b[p];
+         b[p] = b[c];
+         b[c] = t;
+         double f = b[c][c];
+         for(int k = 0; k < 2 * rows; k++) {
+            b[c][k] /= f;
+         }
+         for(int r = 0; r < rows; r++) {
+            if(r != c && b[r][c] != 0d) {
+               double g = b[r][c];
+               for(int k = 0; k < 2 * rows; k++) {
+                  b[r][k] -= g * b[c][k];
+               }
+            }
+         }
+      }
+      for(int i = 0; i < rows; i++) {
+         inverse[i] = Arrays.copyOfRange(b[i], rows, 2 * rows);
+      }
+
+      double[] x = multiply(residual());
+      for(int i = 0; i < rows; i++) {
+         vars.get(head[i]).value = x[i];
+      }
+      pivots = 0;
+      return true;
+   }
+
+   /**
+    * Returns the right-hand side minus the contribution of all nonbasic variables, which the basic variables have to cover.
+    */
+   protected double[] residual() {
+      double[] res = rhs.clone();
+      for(Variable var : vars) {
+         if(var.row < 0 && var.value != 0d) {
+            for(int i = 0; i < rows; i++) {
+               res[i] -= var.coefficients[i] * var.value;
+            }
+         }
+      }
+      return res;
+   }
+
+   protected double[] multiply(double a[]) {
+      double[] w = new double[rows];
+      for(int i = 0; i < rows; i++) {
+         double s = 0d;
+         for(int k = 0; k < rows; k++) {
+            s += inverse[i][k] * a[k];
+         }
+         w[i] = s;
+      }
+      return w;
+   }
+
+   protected void computeDuals() {
+      Arrays.fill(duals, 0d);
+      for(int r = 0; r < rows; r++) {
+         double c = vars.get(head[r]).cost;
+         if(c != 0d) {
+            for(int i = 0; i < rows; i++) {
+               duals[i] += c * inverse[r][i];
+            }
+         }
+      }
+   }
+
+   protected double reducedCost(Variable var) {
+      double d = var.cost;
+      for(int i = 0; i < rows; i++) {
+         d -= duals[i] * var.coefficients[i];
+      }
+      return d;
+   }
+
+   /**
+    * Makes the q-th variable basic in row r, given the column w of the basis inverse times its coefficients.
+    */
+   protected void pivot(int r, int q, double w[]) {
+      double[] pr = inverse[r];
+      double   f  = w[r];
+      for(int k = 0; k < rows; k++) {
+         pr[k] /= f;
+      }
+      for(int i = 0; i < rows; i++) {
+         if(i != r && w[i] != 0d) {
+            double[] pi = inverse[i];
+            for(int k = 0; k < rows; k++) {
+               pi[k] -= w[i] * pr[k];
+            }
+         }
+      }
+      head[r] = q;
+      vars.get(q).row = r;
+      pivots++;
+   }
+
+   /**
+    * Replaces the artificial variables that are basic at zero by other variables, and fixes them at zero, since they would
+    * otherwise lend their prohibitive cost to the duals. Returns whether the basis was changed.
+    */
+   protected boolean driveOutArtificials() {
+      boolean changed = false;
+      for(int r = 0; r < rows; r++) {
+         Variable art = vars.get(head[r]);
+         if(head[r] >= rows || art.value > Tolerance)
+            continue;
+         for(int j = rows; j < vars.size(); j++) {
+            Variable var = vars.get(j);
+            if(var.row >= 0)
+               continue;
+            double[] w = multiply(var.coefficients);
+            if(Math.abs(w[r]) > PivotTolerance) {
+               art.row   = -1;
+               art.value = 0d;
+               art.upper = 0d;
+               pivot(r, j, w);
+               changed = true;
+               break;
+            }
+         }
+      }
+      return changed;
+   }
+
+   /**
+    * Returns whether the current solution uses none of the artificial variables.
+    */
+   protected boolean feasible() {
+      for(int i = 0; i < rows; i++) {
+         if(vars.get(i).value > PivotTolerance)
+            return false;
+      }
+      return true;
+   }
+}
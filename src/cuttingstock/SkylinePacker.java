@@ -0,0 +1,111 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * SkylinePacker.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.ArrayList;
+
+/**
+ * Bottom-left skyline packing: keeps the upper outline of the shapes placed so far as a sequence of horizontal segments,
+ * and places every shape on top of it as low as possible, and then as far to the left as possible.
+ * Segments are stored as {x, y, width}, from left to right.
+ */
+public class SkylinePacker extends Packer {
+   protected final ArrayList<int[]> skyline = new ArrayList<int[]>();
+
+   public SkylinePacker(Problem problem) {
+      super(problem);
+   }
+
+   @Override
+   protected void start() {
+      super.start();
+      skyline.clear();
+      skyline.add(new int[]{ 0, 0, width });
+   }
+
+   @Override
+   protected boolean place(Shape s) {
+      int     bestX = -1, bestY = Integer.MAX_VALUE, bestW = 0, bestH = 0;
+      boolean bestTurn = false;
+      for(int i = 0; i < skyline.size(); i++) {
+         for(boolean turn : new boolean[]{ false, true }) {
+            int w = (turn ? s.height : s.width)  + problem.cuttingLoss,
+                h = (turn ? s.width  : s.height) + problem.cuttingLoss,
+                x = skyline.get(i)[0],
+                y = restingHeight(i, w);
+            if(y >= 0 && y + h <= height && (y + h < bestY + bestH || (y + h == bestY + bestH && x < bestX))) {
+               bestX    = x;
+               bestY    = y;
+               bestW    = w;
+               bestH    = h;
+               bestTurn = turn;
+            }
+         }
+      }
+      if(bestX < 0 || !column.push(bestX, bestY, bestTurn, s))
+         return false;
+      raise(bestX, bestY + bestH, bestW);
+      return true;
+   }
+
+   /**
+    * Returns the height at which a shape of the given width rests when its left side is at the start of the i-th segment,
+    * or -1 if it would stick out of the resource.
+    */
+   protected int restingHeight(int i, int w) {
+      int x = skyline.get(i)[0];
+      if(x + w > width)
+         return -1;
+      int y = 0;
+      for(int j = i; j < skyline.size() && skyline.get(j)[0] < x + w; j++) {
+         y = Math.max(y, skyline.get(j)[1]);
+      }
+      return y;
+   }
+
+   /**
+    * Raises the skyline to the given height between x and x + w.
+    */
+   protected void raise(int x, int y, int w) {
+      ArrayList<int[]> segments = new ArrayList<int[]>();
+      for(int[] seg : skyline) {
+         if(seg[0] + seg[2] <= x || seg[0] >= x + w) {
+            segments.add(seg);
+            continue;
+         }
+         if(seg[0] < x)
+            segments.add(new int[]{ seg[0], seg[1], x - seg[0] });
+         if(seg[0] + seg[2] > x + w)
+            segments.add(new int[]{ x + w, seg[1], seg[0] + seg[2] - x - w });
+      }
+      segments.add(new int[]{ x, y, w });
+      segments.sort((int a[], int b[]) -> Integer.compare(a[0], b[0]));
+
+      // Merge neighbouring segments of equal height
+      skyline.clear();
+      for(int[] seg : segments) {
+         int[] last = (skyline.isEmpty() ? null : skyline.get(skyline.size() - 1));
+         if(last != null && last[1] == seg[1])
+            last[2] += seg[2];
+         else
+            skyline.add(seg);
+      }
+   }
+}
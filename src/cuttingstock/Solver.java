@@ -19,174 +19,608 @@
 
 package cuttingstock;
 
-import dvrlib.generic.RandomOrder;
-import lpsolve.*;
-import java.util.stream.IntStream;
+import dvrlib.generic.IterableOnce;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.Vector;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Solver implements AutoCloseable {
-   protected final ColumnBuilder          columnBuilder = new ColumnBuilder();
-   protected final HashSet<Column>        columns       = new HashSet<Column>();
-   protected final LpSolve                lp;
-   protected final Problem                problem;
-   protected final RandomOrder<Integer[]> shapeOrderings;
+   protected final ArrayList<Column> columnList    = new ArrayList<Column>();
+   protected final ColumnBuilder     columnBuilder = new ColumnBuilder();
+   protected final HashSet<Column>   columns       = new HashSet<Column>();
+   protected final GuillotinePricer  guillotinePricer;
+   protected final MasterProblem     master;
+   protected final PatternCache      patterns;
+   protected final Options           options;
+   protected final ForkJoinPool      pool;
+   protected final Pricer            pricer;
+   protected final Problem           problem;
+
+   protected final static double Epsilon = 1e-9;
 
    protected double[] duals    = new double[0];
    protected boolean  integral = false;
    protected boolean  closed   = false;
+   protected long     solves   = 0L, iterations = 0L;
+
+   // Stabilisation: the duals that gave the best lower bound so far, which only holds while no column bounds are set
+   protected double[] center     = null;
+   protected double   lowerBound = 0d;
+   protected boolean  restricted = false, proven = false;
+
+   // Stopping criteria
+   protected double upperBound = Double.POSITIVE_INFINITY;
+   protected long   deadline   = Long.MAX_VALUE;
+   protected int    rounds     = 0;
+
+   protected MasterProblem.Status status = null;
+
+   // Outcome of solve(): the number of resources used by the integral solution, and a lower bound on that number
+   protected double   resources = Double.POSITIVE_INFINITY, resourcesBound = 0d;
+   protected Listener listener  = null;
+
+   /**
+    * Receives the progress of solve(): the value of the lp and its lower bound after every pricing round without column
+    * bounds, and the number of resources of every better integral solution found.
+    */
+   public interface Listener {
+      public void round(int round, double lp, double bound);
+
+      public void incumbent(double resources);
+   }
+
+   // Column management: the number of copies of each shape worth putting in a column, and for how many rounds in a row
+   // each column has been unused and far from improving. Columns are only purged while the fractional problem is solved,
+   // as the integral phase refers to them by their index.
+   protected final int[] limits;
+   protected int[]       unused = new int[0];
+   protected boolean     frozen = false;
+
+   protected final static int    PurgeInterval = 10, PurgeAge = 5;
+   protected final static double PurgeCost     = 0.1;
 
    public Solver(Problem problem) {
-      LpSolve lp = null;
-      try {
-         // Construct the lp
-         lp = LpSolve.makeLp(problem.shapes.size(), 0);
-         lp.setVerbose(LpSolve.IMPORTANT);
-         lp.setMinim();
-      }
-      catch(LpSolveException e) {
-         e.printStackTrace();
-      }
-      this.lp             = lp;
-      this.problem        = problem;
-      this.shapeOrderings = new RandomOrder<Integer[]>(dvrlib.algorithm.SubSets.subSets(IntStream.range(0, problem.shapes.size()).boxed().toArray(Integer[]::new)));
+      this(problem, new Options());
+   }
 
-      try {
-         // Add constraints
-         for(int i = 0; i < problem.shapes.size(); i++) {
-            lp.setConstrType(i + 1, LpSolve.EQ);
-            lp.setRh(i + 1, problem.shapes.get(i).count() * 1d);
-            lp.setRowName(i + 1, "" + (i + 1));
-         }
+   public Solver(Problem problem, Options options) {
+      // Construct the lp, with a constraint per shape demanding that it is cut at least as often as needed
+      double[] rhs = new double[problem.shapes.size()];
+      for(int i = 0; i < rhs.length; i++) {
+         rhs[i] = problem.shapes.get(i).count();
+      }
+      this.master           = (options.backend == Options.Backend.SIMPLEX ? new SimplexMaster(rhs) : new LpSolveMaster(rhs));
+      this.options          = options;
+      this.problem          = problem;
+      this.guillotinePricer = (options.guillotineStages > 0 ? new GuillotinePricer(problem, options.guillotineStages) : null);
+      this.pool             = (options.threads > 1 ? new ForkJoinPool(options.threads) : null);
+      this.pricer           = (guillotinePricer != null ? guillotinePricer : new KnapsackPricer(problem, columnBuilder, pool, options.budget));
+      this.limits           = problem.shapes.stream().mapToInt(RequiredShape::count).toArray();
+      // Guillotine columns are found without the feasibility cache, and their cuts are not remembered
+      this.patterns         = (options.patternCache != null && guillotinePricer == null ? PatternCache.open(options.patternCache) : null);
 
-         // Add initial columns
-         for(int i = 0; i < problem.shapes.size(); i++) {
-            Column[] cs = columnBuilder.buildColumns(problem, new RequiredShape[]{ problem.shapes.get(i) });
-            if(cs.length == 0)
-               throw new RuntimeException("No way to fit " + problem.shapes.get(i) + " inside a resource");
-            addColumns(cs);
-         }
+      // Add an artificial column per shape, which covers the shape at a prohibitive cost. These keep the lp feasible
+      // when branching forbids the columns found so far, and steer the pricer towards columns that cover the shape.
+      for(int i = 0; i < problem.shapes.size(); i++) {
+         double col[] = new double[problem.shapes.size()];
+         col[i] = 1d;
+         master.addColumn(artificialCost(), col);
+      }
 
-         // Solve the problem
-         lp.solve();
+      // Add initial columns
+      for(int i = 0; i < problem.shapes.size(); i++) {
+         Column[] cs = initialColumns(i);
+         if(cs.length == 0)
+            throw new RuntimeException("No way to fit " + problem.shapes.get(i) + " inside a resource");
+         addColumns(cs);
+      }
 
-         Logger.info("Initial solution:").inBoldYellow().println();
-         printSolution();
+      // Seed the lp with the largest patterns that earlier runs found for the same resources and shapes
+      if(patterns != null) {
+         ArrayList<Column> cs = patterns.seed(problem, columnBuilder.cache);
+         cs.sort(Comparator.comparingInt(Column::size).reversed());
+         addColumns(cs.subList(0, Math.min(cs.size(), options.maxColumns)).toArray(new Column[0]));
       }
-      catch(LpSolveException e) {
-         e.printStackTrace();
+
+      // Seed the lp with the patterns of a few greedy packings of all shapes, which give far better starting duals than
+      // columns holding a single shape each, and bound the number of resources needed from above
+      for(Packer packer : Packer.all(problem, guillotinePricer != null)) {
+         List<Column> cs = packer.pack();
+         addColumns(cs.toArray(new Column[cs.size()]));
+         if(cs.stream().mapToInt(Column::size).sum() == problem.totalDemand())
+            upperBound = Math.min(upperBound, cs.size());
       }
+      Logger.debug("   Seeded " + columnList.size() + " columns; greedy packing needs " + upperBound + " resources").println();
+   }
+
+   /**
+    * Returns the columns that hold only copies of the i-th shape.
+    */
+   protected Column[] initialColumns(int i) {
+      if(guillotinePricer == null)
+         return columnBuilder.buildColumns(problem, new RequiredShape[]{ problem.shapes.get(i) });
+
+      double values[] = new double[problem.shapes.size()];
+      values[i] = 1d;
+      Column c = guillotinePricer.buildColumn(values);
+      return (c == null ? new Column[0] : new Column[]{ c });
    }
 
-   protected boolean addColumns(Column cs[]) throws LpSolveException {
-      boolean added = false;
+   /**
+    * Adds the given columns to the lp, and returns how many of them were new.
+    */
+   protected int addColumns(Column cs[]) {
+      int added = 0;
       for (Column c : cs) {
-         added |= addColumn(c);
+         if(addColumn(c))
+            added++;
       }
       return added;
    }
 
-   protected boolean addColumn(Column c) throws LpSolveException {
-      if(c == null || columns.contains(c))
+   protected boolean addColumn(Column c) {
+      if(c == null)
+         return false;
+      // Adding copies of shapes that still fit only makes a column better, but would invalidate the cuts of guillotine ones.
+      // With column bounds, the better column may be one that branching bounds, so the column is left as priced.
+      if(guillotinePricer == null && !restricted)
+         c = columnBuilder.extend(problem, c, limits, null);
+      ShapeCounts counts = c.counts();
+      if(columns.contains(c) || (!restricted && dominated(counts)))
          return false;
 
-      double col[] = new double[lp.getNrows() + 1];
-      col[0] = 1d; // cost of this column, i.e. one resource
+      master.addColumn(1d, counts.vector(problem.shapes.size())); // the cost of this column is one resource
+      columns.add(c);
+      columnList.add(c);
 
-      for(Shape s : c.map.values()) {
-         col[s.id] += 1d;
+      return true;
+   }
+
+   /**
+    * Returns whether a column holding the given shapes would be dominated by one in the lp, i.e. one that holds at least
+    * as many copies of every shape and is not bounded from above by branching.
+    */
+   protected boolean dominated(ShapeCounts counts) {
+      for(int i = 0; i < columnList.size(); i++) {
+         if(columnList.get(i).counts().contains(counts) && master.upper(lpColumn(i)) == Double.POSITIVE_INFINITY)
+            return true;
       }
+      return false;
+   }
 
-      lp.addColumn(col);
-      lp.setBinary(lp.getNcolumns(), integral);
-      columns.add(c);
+   /**
+    * Counts for how many rounds each column has been unused with a reduced cost above PurgeCost, and periodically, or
+    * whenever there are more than the maximum number of columns, removes the ones for which that has lasted at least
+    * PurgeAge rounds from the lp. If there are still too many columns, the unused ones with the highest reduced cost are
+    * removed as well.
+    */
+   protected void purge() {
+      double[] x = values();
+      unused = Arrays.copyOf(unused, columnList.size());
+      for(int i = 0; i < x.length; i++) {
+         unused[i] = (x[i] <= Epsilon && 1d - value(columnList.get(i), duals) > PurgeCost ? unused[i] + 1 : 0);
+      }
+      if(rounds % PurgeInterval != 0 && columnList.size() <= options.maxColumns)
+         return;
 
-      return true;
+      boolean[]          remove = new boolean[x.length];
+      ArrayList<Integer> spare  = new ArrayList<Integer>();
+      int                n      = 0;
+      for(int i = 0; i < x.length; i++) {
+         if(unused[i] >= PurgeAge) {
+            remove[i] = true;
+            n++;
+         }
+         else if(x[i] <= Epsilon)
+            spare.add(i);
+      }
+      spare.sort(Comparator.comparingDouble((Integer i) -> value(columnList.get(i), duals)));
+      for(int i = 0; i < spare.size() && x.length - n > options.maxColumns; i++) {
+         remove[spare.get(i)] = true;
+         n++;
+      }
+      if(n == 0)
+         return;
+
+      // Remove the columns from the back, so the lp indices of the ones still to be removed stay the same
+      for(int i = x.length - 1; i >= 0; i--) {
+         if(remove[i]) {
+            master.deleteColumn(lpColumn(i));
+            columns.remove(columnList.remove(i));
+         }
+      }
+      int j = 0;
+      for(int i = 0; i < x.length; i++) {
+         if(!remove[i])
+            unused[j++] = unused[i];
+      }
+      unused = Arrays.copyOf(unused, j);
+      Logger.debug("   Purged " + n + " columns, keeping " + columnList.size()).println();
+      solveLP();
+   }
+
+   protected boolean price() {
+      rounds++;
+      if(!frozen && !restricted)
+         purge();
+      // Guillotine patterns can only be generated by their own pricer
+      if(options.pricing == Options.Pricing.SUBSETS && guillotinePricer == null)
+         return priceSubsets();
+
+      Column[] cs = priceStabilised();
+      if(cs.length == 0) {
+         // The last round priced at the duals of the lp itself, so the bound of the pricer applies to those
+         proven = (pricer.bound() <= 1d + Epsilon || pricer.exhaustive());
+         return false;
+      }
+      if(addColumns(cs) == 0) {
+         // Every column found improves the lp, so ones that it holds already must be bounded by branching
+         Logger.debug("   Pricing only found columns that are bounded by branching").println();
+         return false;
+      }
+      return solveLP();
    }
 
-   protected boolean price() throws LpSolveException {
-      shapeOrderings.randomise();
-      for(Integer[] is : shapeOrderings) {
-         double score = 0d;
-         for(int i : is) {
-            score += duals[i];
+   /**
+    * Prices at a convex combination of the duals of the lp and the duals that gave the best lower bound so far, which damps
+    * the oscillation of the duals between rounds. If that yields no column that improves the lp, prices at the duals of
+    * the lp themselves.
+    */
+   protected Column[] priceStabilised() {
+      Set<ShapeCounts> excluded = capped();
+      for(double alpha = (center == null || restricted ? 0d : options.smoothing); ; alpha = 0d) {
+         double[] pi = new double[duals.length];
+         for(int i = 0; i < pi.length; i++) {
+            pi[i] = (alpha > 0d ? alpha * center[i] : 0d) + (1d - alpha) * duals[i];
          }
-         if(score < 1d)
-            continue;
+         Column[] cs = pricer.price(pi, options.columns, excluded);
+         updateBound(pi);
+         cs = Arrays.stream(cs)
+                    .filter((Column c) -> value(c, duals) > 1d + Epsilon)
+                    .toArray(Column[]::new);
+         if(cs.length > 0 || alpha == 0d)
+            return cs;
+         Logger.debug("   Smoothed duals yielded no improving column, pricing at the duals of the lp").println();
+      }
+   }
+
+   /**
+    * Returns the shapes of the columns that branching bounds from above. The pricer should not offer these again, as the lp
+    * can use them no more than it does, so their reduced cost says nothing about whether the lp can still improve.
+    */
+   protected Set<ShapeCounts> capped() {
+      HashSet<ShapeCounts> cs = new HashSet<ShapeCounts>();
+      for(int i = 0; restricted && i < columnList.size(); i++) {
+         if(master.upper(lpColumn(i)) < Double.POSITIVE_INFINITY)
+            cs.add(columnList.get(i).counts());
+      }
+      return cs;
+   }
+
+   /**
+    * Updates the lower bound using the given duals. Scaling the duals down by the highest value of any column makes them
+    * feasible for the dual of the lp, so their value divided by that of the best column bounds the optimum from below.
+    * Alternatively, no solution can use more resources than the incumbent, each of which costs at most the most negative
+    * reduced cost more than its duals are worth, which gives the Lagrangian bound.
+    */
+   protected void updateBound(double pi[]) {
+      if(restricted)
+         return;
+      double value = 0d;
+      for(int i = 0; i < pi.length; i++) {
+         value += pi[i] * problem.shapes.get(i).count();
+      }
+      double best  = Math.max(1d, pricer.bound()),
+             bound = Math.max(value / best, value + Math.min(upperBound, problem.totalDemand()) * (1d - best));
+      if(bound > lowerBound) {
+         lowerBound = bound;
+         center     = pi;
+      }
+   }
+
+   /**
+    * Returns the sum of the given duals over the shapes in the given column.
+    */
+   protected double value(Column c, double duals[]) {
+      double v = 0d;
+      for(int i = 0; i < c.size(); i++) {
+         v += duals[c.ids[i] - 1];
+      }
+      return v;
+   }
+
+   /**
+    * Returns whether the lp is within the requested gap of its lower bound, so generating more columns is not worth it.
+    */
+   protected boolean withinGap() {
+      double z = master.objective();
+      return !restricted && lowerBound > 0d && z - lowerBound <= options.gap * z + Epsilon;
+   }
+
+   /**
+    * Returns whether the time limit or the maximum number of pricing rounds has been reached.
+    */
+   protected boolean stopped() {
+      return System.nanoTime() > deadline || (options.maxIterations > 0 && rounds >= options.maxIterations);
+   }
 
+   /**
+    * Returns a lower bound on the lp of the last call to generateColumns, i.e. on the solutions with the current column
+    * bounds. The value of the lp only is one if the pricer proved that no column improves it, as the pricers are
+    * heuristics otherwise; failing that, the Farley or Lagrangian bound is used, which is unknown with column bounds.
+    */
+   protected double bound() {
+      return (proven ? master.objective() : (restricted ? 0d : Math.max(lowerBound, 0d)));
+   }
+
+   protected boolean priceSubsets() {
+      // Only subsets whose duals sum up to more than the cost of a resource can yield an improving column
+      int                        batch    = (pool == null ? 1 : 2 * pool.getParallelism()),
+                                 added    = 0;
+      long                       deadline = deadline();
+      ArrayList<RequiredShape[]> subsets = new ArrayList<RequiredShape[]>();
+      for(int[] is : new IterableOnce<int[]>(new SubsetGenerator(duals, 1d))) {
          RequiredShape[] ss = new RequiredShape[is.length];
          for(int j = 0; j < is.length; j++) {
             ss[j] = problem.shapes.get(is[j]);
          }
-         Column[] cs = columnBuilder.buildColumns(problem, ss);
-         if(cs.length == 0)
+         subsets.add(ss);
+         if(subsets.size() < batch)
             continue;
 
-         if(!addColumns(cs))
-            continue;
+         added += addColumns(buildColumns(subsets));
+         subsets.clear();
+         // Gather a batch of columns before solving the lp again, as long as the budget allows
+         if(added >= options.columns || (added > 0 && System.nanoTime() > deadline)) {
+            if(solveLP())
+               return true;
+            added    = 0;
+            deadline = deadline();
+         }
+      }
+      added += addColumns(buildColumns(subsets));
+      return added > 0 && solveLP();
+   }
 
-         if(solveLP())
-            return true;
+   /**
+    * Returns the moment at which gathering columns should stop, in terms of System.nanoTime().
+    */
+   protected long deadline() {
+      return (options.budget > 0L ? System.nanoTime() + options.budget * 1000000L : Long.MAX_VALUE);
+   }
+
+   /**
+    * Tries to arrange each of the given sets of shapes into columns, concurrently if there is a pool.
+    */
+   protected Column[] buildColumns(ArrayList<RequiredShape[]> subsets) {
+      ArrayList<Column> cs = new ArrayList<Column>();
+      if(pool == null) {
+         for(RequiredShape[] ss : subsets) {
+            cs.addAll(Arrays.asList(columnBuilder.buildColumns(problem, ss)));
+         }
       }
-      return false;
+      else {
+         ArrayList<Callable<Column[]>> tasks = new ArrayList<Callable<Column[]>>();
+         for(RequiredShape[] ss : subsets) {
+            tasks.add(() -> columnBuilder.buildColumns(problem, ss));
+         }
+         try {
+            for(Future<Column[]> f : pool.invokeAll(tasks)) {
+               cs.addAll(Arrays.asList(f.get()));
+            }
+         }
+         catch(InterruptedException | ExecutionException ex) {
+            throw new RuntimeException("Building columns failed", ex);
+         }
+      }
+      return cs.toArray(new Column[cs.size()]);
+   }
+
+   public void printSolution() {
+      printSolution(values(), master.objective());
+   }
+
+   /**
+    * Prints the solution that uses each column in columnList the given number of times.
+    */
+   public void printSolution(double var[], double objective) {
+      printSolution(columnList, var, objective, integral);
    }
 
-   public void printSolution() throws LpSolveException {
+   /**
+    * Prints the solution that uses each of the given columns the given number of times.
+    */
+   public static void printSolution(List<Column> columns, double var[], double objective, boolean integral) {
       Logger.info("   Number of needed sheets: ").print();
-      Logger.info(integral ? Long.toString(Math.round(lp.getObjective())) : Double.toString(lp.getObjective())).inGreen().println();
-      double[] var = lp.getPtrVariables();
+      Logger.info(integral ? Long.toString(Math.round(objective)) : Double.toString(objective)).inGreen().println();
       for(int i = 0, c = 1; i < var.length; i++) {
-         if(var[i] > 0d) {
-            double col[] = lp.getPtrColumn(i + 1);
+         if(var[i] > Epsilon) {
             Logger.info("   Cutting plan for sheet " + c++ + ": " + (integral ? Long.toString(Math.round(var[i])) : Double.toString(var[i])) + " * ").print();
-            assert(col[0] == 1d); // col[0] holds the cost of the column, which should be one resource
             HashMap<String, Long> shapes = new HashMap<String, Long>();
-            for(int j = 1; j < col.length; j++) {
-               if(col[j] > 0d) {
-                  shapes.put(problem.shapes.get(Integer.parseInt(lp.getRowName(j)) - 1).shape().name, Math.round(col[j]));
-               }
+            for(int j = 0; j < columns.get(i).size(); j++) {
+               shapes.merge(columns.get(i).shape(j).name, 1L, Long::sum);
             }
             Logger.info(shapes).println();
+            if(columns.get(i).cuts != null)
+               Logger.info("      Cuts: " + columns.get(i).cuts).println();
          }
       }
    }
 
-   public void solve() {
-      try {
-         Logger.info("Solving as fractional problem...").inYellow().println();
-         solveLP();
-         while(price()) ;
+   /**
+    * Returns the number of times each column in columnList is used in the best integral solution that was found.
+    */
+   public double[] solve() {
+      // The solver can solve the problem again, starting from the columns found before
+      deadline   = options.deadline();
+      rounds     = 0;
+      frozen     = false;
+      integral   = false;
+      center     = null;
+      lowerBound = 0d;
+      solveLP();
+      Logger.info("Initial solution:").inBoldYellow().println();
+      printSolution();
 
-         Logger.info("Fractional solution:").inBoldYellow().println();
-         printSolution();
+      Logger.info("Solving as fractional problem...").inYellow().println();
+      generateColumns();
 
-         Logger.info("Solving as integral problem...").inYellow().println();
-         integral = true;
-         for(int i = 1; i <= lp.getNcolumns(); i++) {
-            lp.setBinary(i, true);
+      Logger.info("Fractional solution:").inBoldYellow().println();
+      printSolution();
+      if(lowerBound > 0d)
+         Logger.info("   Lower bound: " + lowerBound).println();
+
+      Logger.info("Solving as integral problem...").inYellow().println();
+      frozen = true;
+      BranchAndPrice bp = new BranchAndPrice(this);
+      double[] rounded = roundResidual();
+      if(rounded != null)
+         bp.offer(rounded);
+      double[] best = bp.solve();
+      integral       = true;
+      resources      = bp.incumbentValue;
+      resourcesBound = bp.lowerBound;
+
+      Logger.info("Integral solution:").inBoldYellow().println();
+      printSolution(best, bp.incumbentValue);
+      Logger.info("   Solved the lp " + solves + " times, using " + iterations + " simplex iterations in total").println();
+      return best;
+   }
+
+   /**
+    * Returns an integral solution found by residual rounding: the columns of the current solution are used as many whole
+    * times as they are in it, and the lp of the demand that remains is solved again, until no demand remains. If nothing
+    * can be rounded down, the most used column is used once. The right-hand sides are restored afterwards. Returns null
+    * if the residual lp could not be solved.
+    */
+   protected double[] roundResidual() {
+      int[]    demand  = new int[problem.shapes.size()];
+      double[] rounded = new double[0];
+      for(int i = 0; i < demand.length; i++) {
+         demand[i] = problem.shapes.get(i).count();
+      }
+      restricted = true;
+      for(int round = 1; ; round++) {
+         double[] x = values();
+         rounded = Arrays.copyOf(rounded, x.length);
+         if(stopped()) {
+            // Out of time: rounding up always covers the remaining demand
+            for(int j = 0; j < x.length; j++) {
+               rounded[j] += Math.ceil(x[j] - Epsilon);
+            }
+            break;
+         }
+
+         int most = 0;
+         boolean any = false;
+         for(int j = 0; j < x.length; j++) {
+            any |= (Math.floor(x[j] + Epsilon) > 0d);
+            if(x[j] > x[most])
+               most = j;
+         }
+         for(int j = 0; j < x.length; j++) {
+            int n = (int) (any ? Math.floor(x[j] + Epsilon) : (j == most ? 1 : 0));
+            rounded[j] += n;
+            for(int k = 0; n > 0 && k < columnList.get(j).size(); k++) {
+               demand[columnList.get(j).ids[k] - 1] -= n;
+            }
          }
-         solveLP();
-         while(price()) ;
+         if(Arrays.stream(demand).allMatch((int d) -> d <= 0))
+            break;
+
+         Logger.debug("   Residual rounding, round " + round + ": " + Arrays.toString(demand) + " remaining").println();
+         for(int i = 0; i < demand.length; i++) {
+            master.setRhs(i, Math.max(0, demand[i]));
+         }
+         if(!generateColumns()) {
+            // Should not happen, as the columns found so far can cover any demand
+            rounded = null;
+            break;
+         }
+      }
 
-         Logger.info("Integral solution:").inBoldYellow().println();
-         printSolution();
+      for(int i = 0; i < demand.length; i++) {
+         master.setRhs(i, problem.shapes.get(i).count());
       }
-      catch(LpSolveException e) {
-         e.printStackTrace();
+      restricted = false;
+      return rounded;
+   }
+
+   /**
+    * Solves the lp and keeps adding columns until pricing finds no more, and returns whether the result is feasible, i.e.
+    * uses none of the artificial columns. The lower bound and the duals that gave it are kept from earlier calls, as they
+    * hold for the problem itself rather than for the columns or column bounds at hand.
+    */
+   protected boolean generateColumns() {
+      proven = false;
+      solveLP();
+      while(true) {
+         Logger.debug("   Round " + rounds + ": lp " + master.objective() + ", lower bound " + lowerBound).println();
+         if(listener != null && !restricted)
+            listener.round(rounds, master.objective(), lowerBound);
+         if(withinGap()) {
+            Logger.debug("   Lp is within the gap of its lower bound " + lowerBound).println();
+            break;
+         }
+         if(stopped()) {
+            Logger.debug("   Stopped generating columns after " + rounds + " rounds").println();
+            break;
+         }
+         if(!price())
+            break;
       }
+      if(status != MasterProblem.Status.OPTIMAL)
+         return false;
+      double[] var = master.primal();
+      for(int i = 0; i < problem.shapes.size(); i++) {
+         if(var[i] > Epsilon)
+            return false;
+      }
+      return true;
    }
 
-   protected boolean solveLP() throws LpSolveException {
-      lp.solve();
+   /**
+    * Returns the number of times each column in columnList is used in the current solution of the lp.
+    */
+   protected double[] values() {
+      double[] var = master.primal();
+      return Arrays.copyOfRange(var, problem.shapes.size(), problem.shapes.size() + columnList.size());
+   }
+
+   /**
+    * Returns the index in the lp of the i-th column in columnList.
+    */
+   protected int lpColumn(int i) {
+      return problem.shapes.size() + i;
+   }
+
+   /**
+    * Returns the cost of an artificial column, which exceeds the number of resources used by any sensible solution.
+    */
+   protected double artificialCost() {
+      return problem.totalDemand() + 1d;
+   }
+
+   protected boolean solveLP() {
+      status = master.solve();
+      solves++;
+      iterations += master.iterations();
+      Logger.debug("   Solved lp with " + master.columns() + " columns in " + master.iterations() + " iterations").println();
+
       // Retrieve shadow prices
-      double dualsArr[] = lp.getPtrDualSolution();
+      double dualsArr[] = master.duals();
       double[] dualsOld = duals;
       duals = new double[problem.shapes.size()];
-      for(int i = 0; i < lp.getNrows(); i++) {
-         duals[i] = dualsArr[i + 1] > 0d ? dualsArr[i] : 0d;
+      for(int i = 0; i < master.rows(); i++) {
+         duals[i] = dualsArr[i] > 0d ? dualsArr[i] : 0d;
       }
       // Return whether the duals have changed, and therefore whether the solution has changed
       return !Arrays.equals(duals, dualsOld);
@@ -195,8 +629,12 @@ public class Solver implements AutoCloseable {
    //--- java.lang.AutoCloseable
    @Override
    public void close() {
-      if(!closed && lp != null) {
-         lp.deleteLp();
+      if(!closed) {
+         if(patterns != null)
+            patterns.record(problem, columnBuilder.cache);
+         master.close();
+         if(pool != null)
+            pool.shutdown();
          closed = true;
       }
    }
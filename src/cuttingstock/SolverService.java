@@ -0,0 +1,301 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * SolverService.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps solving problems posted over HTTP on the loopback interface, so every problem is spared starting the JVM.
+ * Problems are posted to /solve, either in the format of problem files or as a JSON object as read by ProblemReader,
+ * optionally with a time limit in seconds of at most a day, as the time-limit query parameter or the timeLimit field.
+ * They are solved on a pool of options.jobs workers, each by its own solver; when options.queue problems are waiting
+ * already, new ones are turned away with status 503. The response streams a JSON object per line: the progress of the
+ * solver, followed by the solution or an error. GET /status reports the load of the workers.
+ */
+public class SolverService implements AutoCloseable {
+   protected final static int  MaxRequestSize   = 16 << 20;
+   protected final static long DefaultTimeLimit = 60L, MaxTimeLimit = 24L * 60L * 60L;
+
+   protected final Options            options;
+   protected final HttpServer         server;
+   protected final ThreadPoolExecutor workers;
+
+   public SolverService(Options options) throws IOException {
+      this.options = options;
+      this.workers = new ThreadPoolExecutor(options.jobs, options.jobs, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(options.queue));
+      this.server  = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 0);
+      server.createContext("/solve", this::accept);
+      server.createContext("/status", this::status);
+      // Requests are only read and handed to the workers by these threads, while responses stream from the workers
+      server.setExecutor(Executors.newCachedThreadPool());
+   }
+
+   public void start() {
+      server.start();
+      Logger.info("Solving problems posted to http://localhost:" + server.getAddress().getPort() + "/solve, " + options.jobs + " at a time").inYellow().println();
+      // The output of the solvers would only interleave
+      Logger.MinimumLevel = Logger.Level.ERROR;
+   }
+
+   /**
+    * Reads a posted problem and hands it to a worker, or responds with an error right away.
+    */
+   protected void accept(HttpExchange exchange) throws IOException {
+      if(!exchange.getRequestMethod().equals("POST")) {
+         respond(exchange, 405, "Problems should be posted");
+         return;
+      }
+
+      Problem problem;
+      Options opts = options.copy();
+      try {
+         byte[] body = read(exchange.getRequestBody());
+         if(body == null) {
+            respond(exchange, 413, "Problems are limited to " + MaxRequestSize + " bytes");
+            return;
+         }
+         long limit = timeLimit(exchange.getRequestURI().getRawQuery());
+         if(json(exchange, body)) {
+            Object o = Json.parse(new String(body, StandardCharsets.UTF_8));
+            if(!(o instanceof Map))
+               throw new IllegalArgumentException("Expected a JSON object");
+            Map<?, ?> map = (Map<?, ?>) o;
+            problem = ProblemReader.read(map, "request");
+            if(map.containsKey("timeLimit"))
+               limit = timeLimit(map.get("timeLimit"));
+         }
+         else
+            problem = new Problem(new ByteArrayInputStream(body), "request");
+         if(problem.shapes.isEmpty())
+            throw new IllegalArgumentException("The problem holds no shapes");
+         if(limit <= 0L || limit > MaxTimeLimit)
+            throw new IllegalArgumentException("The time limit should be between 1 and " + MaxTimeLimit + " seconds");
+         // The time limit of the service, if any, bounds those of the requests
+         opts.timeLimit = Math.min(limit, options.timeLimit > 0L ? options.timeLimit : Long.MAX_VALUE);
+      }
+      catch(IllegalArgumentException ex) {
+         respond(exchange, 400, ex.getMessage());
+         return;
+      }
+
+      try {
+         workers.execute(() -> solve(exchange, problem, opts));
+      }
+      catch(RejectedExecutionException ex) {
+         exchange.getResponseHeaders().set("Retry-After", "1");
+         respond(exchange, 503, "Too many problems are waiting already");
+      }
+   }
+
+   /**
+    * Returns the time limit given by the query, or the default one.
+    */
+   protected long timeLimit(String query) {
+      if(query != null) {
+         for(String param : query.split("&")) {
+            if(param.startsWith("time-limit=")) {
+               try {
+                  return Long.parseLong(param.substring("time-limit=".length()));
+               }
+               catch(NumberFormatException ex) {
+                  throw new IllegalArgumentException("Invalid time limit " + param.substring("time-limit=".length()));
+               }
+            }
+         }
+      }
+      return (options.timeLimit > 0L ? options.timeLimit : DefaultTimeLimit);
+   }
+
+   /**
+    * Returns the time limit given by the timeLimit field of a JSON request, which should be a whole number of seconds.
+    */
+   protected static long timeLimit(Object value) {
+      double limit = (value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+      if(limit != Math.rint(limit))
+         throw new IllegalArgumentException("Invalid time limit " + value);
+      // Huge values saturate rather than wrap around, so they are turned away as too long
+      return (long) limit;
+   }
+
+   /**
+    * Returns whether the given request body holds JSON, judging by its content type or else its first character.
+    */
+   protected static boolean json(HttpExchange exchange, byte body[]) {
+      String type = exchange.getRequestHeaders().getFirst("Content-Type");
+      if(type != null)
+         return type.contains("json");
+      for(byte b : body) {
+         if(!Character.isWhitespace(b))
+            return (b == '{');
+      }
+      return false;
+   }
+
+   /**
+    * Returns all bytes of the given stream, or null if there are more than MaxRequestSize.
+    */
+   protected static byte[] read(InputStream in) throws IOException {
+      ByteArrayOutputStream out    = new ByteArrayOutputStream();
+      byte[]                buffer = new byte[1 << 16];
+      for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+         out.write(buffer, 0, n);
+         if(out.size() > MaxRequestSize)
+            return null;
+      }
+      return out.toByteArray();
+   }
+
+   /**
+    * Solves the given problem, streaming progress and the solution to the given exchange. Stops solving once the client
+    * has gone.
+    */
+   protected void solve(HttpExchange exchange, Problem problem, Options opts) {
+      try(OutputStream out = exchange.getResponseBody()) {
+         exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+         exchange.sendResponseHeaders(200, 0L);
+         try {
+            if(opts.heuristic) {
+               HeuristicSolver solver = new HeuristicSolver(problem, opts);
+               List<Column>    best   = solver.solve();
+               double[]        var    = new double[best.size()];
+               Arrays.fill(var, 1d);
+               write(out, solution(best, var, best.size(), solver.areaBound()));
+               return;
+            }
+            try(Solver solver = new Solver(problem, opts)) {
+               solver.listener = new Solver.Listener() {
+                  @Override
+                  public void round(int round, double lp, double bound) {
+                     write(out, "{\"round\":" + round + ",\"lp\":" + Json.number(lp) + ",\"bound\":" + Json.number(bound) + "}");
+                  }
+
+                  @Override
+                  public void incumbent(double resources) {
+                     write(out, "{\"incumbent\":" + Json.integer(resources) + "}");
+                  }
+               };
+               double[] best = solver.solve();
+               write(out, solution(solver.columnList, best, solver.resources, solver.resourcesBound));
+            }
+         }
+         catch(UncheckedIOException ex) {
+            throw ex;
+         }
+         catch(RuntimeException ex) {
+            write(out, "{\"error\":" + Json.quote(ex.getMessage() == null ? ex.toString() : ex.getMessage()) + "}");
+         }
+      }
+      catch(IOException | UncheckedIOException ex) {
+         Logger.debug("Client went away: " + ex.getMessage()).println();
+      }
+      finally {
+         exchange.close();
+      }
+   }
+
+   /**
+    * Returns the given solution as a JSON object, listing the placements of every pattern that is used.
+    */
+   protected static String solution(List<Column> columns, double var[], double resources, double bound) {
+      StringBuilder sb = new StringBuilder("{\"resources\":").append(Json.integer(resources))
+                                                             .append(",\"bound\":").append(Json.integer(Math.ceil(bound - 1e-6)))
+                                                             .append(",\"patterns\":[");
+      boolean first = true;
+      for(int i = 0; i < var.length; i++) {
+         if(Math.round(var[i]) <= 0)
+            continue;
+         Column c = columns.get(i);
+         sb.append(first ? "" : ",").append("{\"count\":").append(Math.round(var[i])).append(",\"placements\":[");
+         first = false;
+         for(int j = 0; j < c.size(); j++) {
+            Shape s = c.shape(j);
+            sb.append(j == 0 ? "" : ",")
+              .append("{\"id\":").append(s.id)
+              .append(",\"name\":").append(Json.quote(s.name))
+              .append(",\"width\":").append(s.width)
+              .append(",\"height\":").append(s.height)
+              .append(",\"x\":").append(c.xs[j])
+              .append(",\"y\":").append(c.ys[j])
+              .append(",\"turned\":").append(c.turns.get(j))
+              .append("}");
+         }
+         sb.append("]}");
+      }
+      return sb.append("]}").toString();
+   }
+
+   protected void status(HttpExchange exchange) throws IOException {
+      byte[] body = ("{\"active\":" + workers.getActiveCount() + ",\"waiting\":" + workers.getQueue().size() + ",\"completed\":" + workers.getCompletedTaskCount() + ",\"jobs\":" + options.jobs + ",\"queue\":" + options.queue + "}\n").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try(OutputStream out = exchange.getResponseBody()) {
+         out.write(body);
+      }
+   }
+
+   /**
+    * Writes a line to the given response and sends it right away.
+    */
+   protected static void write(OutputStream out, String line) {
+      try {
+         out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+         out.flush();
+      }
+      catch(IOException ex) {
+         throw new UncheckedIOException(ex);
+      }
+   }
+
+   /**
+    * Responds with the given status and a JSON object holding the given error.
+    */
+   protected static void respond(HttpExchange exchange, int status, String error) throws IOException {
+      byte[] body = ("{\"error\":" + Json.quote(error) + "}\n").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      try(OutputStream out = exchange.getResponseBody()) {
+         out.write(body);
+      }
+   }
+
+   @Override
+   public void close() {
+      server.stop(0);
+      workers.shutdownNow();
+   }
+}
@@ -0,0 +1,109 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * SubsetGenerator.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Lazily generates subsets of indices in descending order of the sum of their values, skipping indices without a
+ * positive value and stopping as soon as the sum drops below the given threshold.
+ * Subsets are generated by removing indices from the full set, ordered by the sum of the removed values; each removed set
+ * only refers to its predecessor, so only the subsets that are actually visited take up any memory.
+ */
+public class SubsetGenerator implements Iterator<int[]> {
+   protected static class Node {
+      protected final double removed;
+      protected final int    last;
+      protected final Node   prev;
+
+      protected Node(double removed, int last, Node prev) {
+         this.removed = removed;
+         this.last    = last;
+         this.prev    = prev;
+      }
+   }
+
+   protected final PriorityQueue<Node> queue = new PriorityQueue<Node>(Comparator.comparingDouble((Node n) -> n.removed));
+   protected final double              threshold, total;
+   protected final double[]            values;
+   protected final int[]               indices;
+
+   protected Node    next  = null;
+   protected boolean first = true;
+
+   public SubsetGenerator(double values[], double threshold) {
+      this.values    = values;
+      this.threshold = threshold;
+      // Sort the indices by ascending value, so the cheapest removals come first
+      this.indices   = IntStream.range(0, values.length)
+                                .filter((int i) -> values[i] > 0d)
+                                .boxed()
+                                .sorted(Comparator.comparingDouble((Integer i) -> values[i]))
+                                .mapToInt(Integer::intValue)
+                                .toArray();
+      this.total     = IntStream.of(indices).mapToDouble((int i) -> values[i]).sum();
+      if(indices.length > 0)
+         offer(new Node(values[indices[0]], 0, null));
+   }
+
+   protected void offer(Node n) {
+      if(total - n.removed >= threshold)
+         queue.offer(n);
+   }
+
+   @Override
+   public boolean hasNext() {
+      if(first)
+         return indices.length > 0 && total >= threshold;
+      if(next == null && !queue.isEmpty()) {
+         next = queue.poll();
+         // Either extend the removed set with the next index, or replace its last index with the next one
+         if(next.last + 1 < indices.length) {
+            offer(new Node(next.removed + values[indices[next.last + 1]], next.last + 1, next));
+            offer(new Node(next.removed - values[indices[next.last]] + values[indices[next.last + 1]], next.last + 1, next.prev));
+         }
+      }
+      return next != null;
+   }
+
+   @Override
+   public int[] next() {
+      if(!hasNext())
+         throw new NoSuchElementException();
+
+      boolean[] removed = new boolean[indices.length];
+      if(first)
+         first = false;
+      else {
+         for(Node n = next; n != null; n = n.prev) {
+            removed[n.last] = true;
+         }
+         next = null;
+      }
+      return IntStream.range(0, indices.length)
+                      .filter((int i) -> !removed[i])
+                      .map((int i) -> indices[i])
+                      .toArray();
+   }
+}
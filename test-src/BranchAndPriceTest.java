@@ -0,0 +1,91 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * BranchAndPriceTest.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BranchAndPriceTest {
+   protected static Solver solver(String problem) throws IOException {
+      Options options = new Options();
+      options.backend = Options.Backend.SIMPLEX;
+      return new Solver(new Problem(new ByteArrayInputStream(problem.getBytes(StandardCharsets.UTF_8)), "test"), options);
+   }
+
+   /**
+    * Returns the index in columnList of the column holding the given number of copies of the first shape, or -1.
+    */
+   protected static int column(Solver solver, int copies) {
+      for(int i = 0; i < solver.columnList.size(); i++) {
+         if(solver.columnList.get(i).counts().count(1) == copies)
+            return i;
+      }
+      return -1;
+   }
+
+   @Test
+   public void testRootIsProven() throws IOException {
+      try(Solver solver = solver("0 10 10\n4 5 5 A\n")) {
+         assertTrue(solver.generateColumns());
+         assertTrue(solver.proven);
+         assertEquals(1d, solver.bound(), 1e-6);
+      }
+   }
+
+   @Test
+   public void testCappedColumnConverges() throws IOException {
+      // Four squares fit on a resource, so forbidding that column leaves columns of three, of which 4/3 are needed
+      try(Solver solver = solver("0 10 10\n4 5 5 A\n")) {
+         assertTrue(solver.generateColumns());
+         int four = column(solver, 4);
+         assertTrue(four >= 0);
+
+         solver.restricted = true;
+         solver.master.setBounds(solver.lpColumn(four), 0d, 0d);
+         assertTrue(solver.generateColumns());
+         assertTrue("the pricer proves that no other column improves the lp", solver.proven);
+         assertEquals(4d / 3d, solver.bound(), 1e-6);
+         assertEquals(4d / 3d, solver.master.objective(), 1e-6);
+         assertTrue(column(solver, 3) >= 0);
+         assertEquals(0d, solver.values()[four], 1e-9);
+      }
+   }
+
+   @Test
+   public void testCappedColumnIsNotPricedAgain() throws IOException {
+      try(Solver solver = solver("0 10 10\n4 5 5 A\n")) {
+         assertTrue(solver.generateColumns());
+         int four = column(solver, 4);
+
+         solver.restricted = true;
+         solver.master.setBounds(solver.lpColumn(four), 0d, 0d);
+         solver.solveLP();
+         for(Column c : solver.pricer.price(solver.duals, 10, solver.capped())) {
+            assertFalse(c.counts().count(1) == 4);
+         }
+      }
+   }
+}
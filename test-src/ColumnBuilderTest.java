@@ -0,0 +1,180 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * ColumnBuilderTest.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnBuilderTest {
+   protected static Problem problem(String text) throws IOException {
+      return new Problem(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), "test");
+   }
+
+   /**
+    * Returns a small random problem, which holds between two and six shapes in total.
+    */
+   protected static Problem randomProblem(Random random) throws IOException {
+      int           width  = 6 + random.nextInt(8),
+                    height = 6 + random.nextInt(8);
+      StringBuilder sb     = new StringBuilder(random.nextInt(2) + " " + width + " " + height + "\n");
+      for(int n = 2 + random.nextInt(5), i = 0; n > 0; i++) {
+         int count = 1 + random.nextInt(n);
+         sb.append(count + " " + (1 + random.nextInt(width)) + " " + (1 + random.nextInt(height)) + " S" + i + "\n");
+         n -= count;
+      }
+      return problem(sb.toString());
+   }
+
+   /**
+    * Returns every copy of every shape in the given problem, sorted as the column builder sorts them.
+    */
+   protected static Shape[] shapes(Problem problem) {
+      ArrayList<Shape> shapes = new ArrayList<Shape>();
+      for(RequiredShape rs : problem.shapes) {
+         for(int i = 0; i < rs.count(); i++) {
+            shapes.add(rs.shape());
+         }
+      }
+      return shapes.stream().sorted(ColumnBuilder.LargestFirst).toArray(Shape[]::new);
+   }
+
+   /**
+    * Tries every location Column.possibleLocs offers for every shape, without pruning any of them.
+    */
+   protected static boolean arrangeUnpruned(Column column, Shape shapes[], int i) {
+      if(i == shapes.length)
+         return true;
+      long[] locs = new long[column.maxLocs()];
+      for(int j = 0, n = column.possibleLocs(shapes[i], locs); j < n; j++) {
+         column.push(Column.unpackX(locs[j]), Column.unpackY(locs[j]), Column.unpackTurn(locs[j]), shapes[i]);
+         if(arrangeUnpruned(column, shapes, i + 1))
+            return true;
+         column.pop();
+      }
+      return false;
+   }
+
+   /**
+    * Asserts that the search of the column builder finds an arrangement whenever trying every location without pruning
+    * does.
+    */
+   protected static void assertPruningKeeps(Problem problem) {
+      Shape[]              shapes = shapes(problem);
+      ColumnBuilder.Search search = new ColumnBuilder.Search(problem, shapes);
+      boolean              found  = new ColumnBuilder().buildColumn(search, 0);
+      if(search.nodes > ColumnBuilder.MaxNodes)
+         return;
+      boolean reachable = arrangeUnpruned(new Column(problem, shapes.length), shapes, 0);
+      assertTrue("Pruning lost the arrangement of " + Arrays.toString(shapes) + " on " + problem.cuttingLoss + "/" + problem.resourceWidth + "x" + problem.resourceHeight, found || !reachable);
+   }
+
+   @Test
+   public void testPruningKeepsIdenticalShapes() throws IOException {
+      // Requiring normal coordinates and ascending locations for the copies of B lost every arrangement reachable here
+      assertPruningKeeps(problem("0 13 11\n1 6 5 A\n5 7 3 B\n"));
+   }
+
+   @Test
+   public void testPruningKeepsReachableArrangements() throws IOException {
+      Random random = new Random(42);
+      for(int run = 0; run < 2000; run++) {
+         assertPruningKeeps(randomProblem(random));
+      }
+   }
+
+   /**
+    * Tries every location with integral coordinates for every shape, placing identical shapes in ascending order of their
+    * locations.
+    */
+   protected static boolean arrangeExhaustively(Column column, Shape shapes[], int i) {
+      if(i == shapes.length)
+         return true;
+      Problem problem = column.problem;
+      for(int y = 0; y < problem.resourceHeight; y++) {
+         for(int x = 0; x < problem.resourceWidth; x++) {
+            for(int t = 0; t < 2; t++) {
+               if(i > 0 && shapes[i - 1] == shapes[i] && Column.pack(x, y, t == 1) <= Column.pack(column.xs[i - 1], column.ys[i - 1], column.turns.get(i - 1)))
+                  continue;
+               if(!column.push(x, y, t == 1, shapes[i]))
+                  continue;
+               if(arrangeExhaustively(column, shapes, i + 1))
+                  return true;
+               column.pop();
+            }
+         }
+      }
+      return false;
+   }
+
+   @Test
+   public void testPinwheelIsNotProvenInfeasible() throws IOException {
+      // These shapes only fit as a pinwheel, in which no shape touches another at a corner
+      Problem problem = problem("1 12 10\n2 7 3 A\n2 5 4 B\n");
+      Shape[] shapes  = shapes(problem);
+      assertTrue(arrangeExhaustively(new Column(problem, shapes.length), shapes, 0));
+      for(int run = 0; run < 20; run++) {
+         ColumnBuilder builder = new ColumnBuilder();
+         builder.buildColumn(problem, shapes);
+         assertFalse(builder.provenInfeasible(shapes));
+         Column column = builder.settle(problem, shapes);
+         assertNotNull(column);
+         assertEquals(shapes.length, column.size());
+         assertFalse(builder.provenInfeasible(shapes));
+      }
+   }
+
+   @Test
+   public void testSettleMatchesExhaustiveSearch() throws IOException {
+      Random random = new Random(7);
+      for(int run = 0; run < 500; ) {
+         Problem problem = randomProblem(random);
+         Shape[] shapes  = shapes(problem);
+         // Only sets of shapes that pass the bounds need a search
+         if(!Bounds.mayFit(problem, shapes))
+            continue;
+         run++;
+         ColumnBuilder builder  = new ColumnBuilder();
+         Column        column   = builder.settle(problem, shapes);
+         boolean       feasible = arrangeExhaustively(new Column(problem, shapes.length), shapes, 0);
+         String        name     = Arrays.toString(shapes) + " on " + problem.cuttingLoss + "/" + problem.resourceWidth + "x" + problem.resourceHeight;
+         if(column != null)
+            assertEquals(name, shapes.length, column.size());
+         if(builder.provenInfeasible(shapes))
+            assertFalse("Falsely proven infeasible: " + name, feasible);
+         else if(column == null)
+            assertTrue("Settled without a proof: " + name, builder.unsettled.contains(ShapeCounts.of(shapes)));
+         else
+            assertTrue(feasible);
+         // The search may run out of checks, but must find an arrangement otherwise
+         if(feasible && !builder.unsettled.contains(ShapeCounts.of(shapes)))
+            assertNotNull("Missed the arrangement of " + name, column);
+      }
+   }
+}
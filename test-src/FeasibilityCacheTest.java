@@ -0,0 +1,113 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * FeasibilityCacheTest.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeasibilityCacheTest {
+   protected final Problem problem;
+   protected final Shape   a, b;
+
+   public FeasibilityCacheTest() throws IOException {
+      problem = new Problem(new ByteArrayInputStream("0 10 10\n2 5 5 A\n2 3 3 B\n".getBytes(StandardCharsets.UTF_8)), "test");
+      a       = problem.shape(1);
+      b       = problem.shape(2);
+   }
+
+   protected static ShapeCounts counts(Shape... shapes) {
+      return ShapeCounts.of(shapes);
+   }
+
+   /**
+    * Returns the arrangement of two copies of A side by side, with a copy of B above them.
+    */
+   protected Column column() {
+      Column c = new Column(problem, 3);
+      assertTrue(c.push(0, 0, false, a));
+      assertTrue(c.push(5, 0, false, a));
+      assertTrue(c.push(0, 5, false, b));
+      return c;
+   }
+
+   @Test
+   public void testUnknown() {
+      FeasibilityCache cache = new FeasibilityCache();
+      assertEquals(FeasibilityCache.Feasibility.UNKNOWN, cache.feasibility(counts(a)));
+      cache.putFeasible(counts(a, a, b), column());
+      assertEquals(FeasibilityCache.Feasibility.UNKNOWN, cache.feasibility(counts(b, b)));
+   }
+
+   @Test
+   public void testSubsetOfFeasible() {
+      FeasibilityCache cache = new FeasibilityCache();
+      cache.putFeasible(counts(a, a, b), column());
+
+      FeasibilityCache.Lookup exact = cache.lookup(counts(a, a, b));
+      assertEquals(FeasibilityCache.Feasibility.FEASIBLE, exact.feasibility);
+      assertEquals(counts(a, a, b), exact.column.counts());
+
+      // A subset is feasible too, and comes with an arrangement of exactly its own shapes
+      FeasibilityCache.Lookup subset = cache.lookup(counts(a, b));
+      assertEquals(FeasibilityCache.Feasibility.FEASIBLE, subset.feasibility);
+      assertEquals(counts(a, b), subset.column.counts());
+      assertEquals(FeasibilityCache.Feasibility.FEASIBLE, cache.feasibility(counts(a)));
+   }
+
+   @Test
+   public void testSupersetOfInfeasible() {
+      FeasibilityCache cache = new FeasibilityCache();
+      cache.putInfeasible(counts(b, b), false);
+
+      FeasibilityCache.Lookup superset = cache.lookup(counts(a, b, b));
+      assertEquals(FeasibilityCache.Feasibility.INFEASIBLE, superset.feasibility);
+      assertNull(superset.column);
+      assertFalse(superset.proven);
+      // A subset of an infeasible multiset says nothing
+      assertEquals(FeasibilityCache.Feasibility.UNKNOWN, cache.feasibility(counts(b)));
+   }
+
+   @Test
+   public void testFeasibleTakesPrecedence() {
+      // Infeasibility may only mean no arrangement was found in time, so a known arrangement overrules it
+      FeasibilityCache cache = new FeasibilityCache();
+      cache.putInfeasible(counts(a, b), false);
+      cache.putFeasible(counts(a, a, b), column());
+      assertEquals(FeasibilityCache.Feasibility.FEASIBLE, cache.feasibility(counts(a, b)));
+      assertEquals(FeasibilityCache.Feasibility.FEASIBLE, cache.feasibility(counts(a, a, b)));
+      assertEquals(FeasibilityCache.Feasibility.INFEASIBLE, cache.feasibility(counts(a, b, b)));
+   }
+
+   @Test
+   public void testProvenInfeasible() {
+      FeasibilityCache cache = new FeasibilityCache();
+      cache.putInfeasible(counts(a, a, a, a, a), true);
+      cache.putInfeasible(counts(b, b, b, b, b, b, b, b, b, b, b, b), false);
+      assertTrue(cache.lookup(counts(a, a, a, a, a, b)).proven);
+      assertFalse(cache.lookup(counts(b, b, b, b, b, b, b, b, b, b, b, b)).proven);
+   }
+}
@@ -0,0 +1,94 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * ProblemReaderTest.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProblemReaderTest {
+   protected static Problem problem(String text) throws IOException {
+      return new Problem(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), "test");
+   }
+
+   @Test
+   public void testReadsShapes() throws IOException {
+      Problem problem = problem("3 100 50\n\n2 10 20 A\n1 30 40 B\n");
+      assertEquals(3, problem.cuttingLoss);
+      assertEquals(100, problem.resourceWidth);
+      assertEquals(50, problem.resourceHeight);
+      assertEquals(2, problem.shapes.size());
+      assertEquals(2, problem.shapes.get(0).count());
+      assertEquals(10, problem.shape(1).width);
+      assertEquals(20, problem.shape(1).height);
+      assertEquals("B", problem.shape(2).name);
+      assertEquals(10, problem.minimumSide);
+   }
+
+   @Test
+   public void testMergesTurnedDuplicates() throws IOException {
+      // A 3x5 shape is a 5x3 one turned, so both lines are one shape needed three times
+      Problem problem = problem("0 10 10\n2 5 3 A\n1 7 7 C\n1 3 5 B\n");
+      assertEquals(2, problem.shapes.size());
+      assertEquals(3, problem.shapes.get(0).count());
+      assertEquals(5, problem.shape(1).width);
+      assertEquals(3, problem.shape(1).height);
+      assertEquals("A/B", problem.shape(1).name);
+      assertEquals(1, problem.shapes.get(1).count());
+      assertEquals(2, problem.shape(2).id);
+      assertEquals(4, problem.totalDemand());
+   }
+
+   @Test
+   public void testMergesDuplicatesFromJson() {
+      Problem problem = ProblemReader.read((Map<?, ?>) Json.parse("{\"width\": 10, \"height\": 10, \"shapes\": [" +
+                                                                  "{\"count\": 2, \"width\": 5, \"height\": 3, \"name\": \"A\"}," +
+                                                                  "{\"count\": 1, \"width\": 3, \"height\": 5, \"name\": \"A\"}]}"), "test");
+      assertEquals(1, problem.shapes.size());
+      assertEquals(3, problem.shapes.get(0).count());
+      assertEquals("A", problem.shape(1).name);
+   }
+
+   @Test
+   public void testDropsShapesNotNeeded() throws IOException {
+      // Shapes needed zero times get no id, also when merged with others that are not needed either
+      Problem problem = problem("0 10 10\n0 2 2 A\n1 4 4 B\n0 2 2 C\n");
+      assertEquals(1, problem.shapes.size());
+      assertEquals("B", problem.shape(1).name);
+      assertEquals(1, problem.shape(1).id);
+   }
+
+   @Test
+   public void testReportsPosition() throws IOException {
+      try {
+         problem("0 10 10\n1 4 x A\n");
+         fail("Read a shape without a height");
+      }
+      catch(IllegalArgumentException ex) {
+         assertTrue(ex.getMessage(), ex.getMessage().startsWith("test:2:"));
+      }
+   }
+}
@@ -0,0 +1,98 @@
+/**
+ * 2D Cutting stock
+ * Copyright (C) 2023 DuncanvR
+ * SimplexMasterTest.java
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cuttingstock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimplexMasterTest {
+   @Test
+   public void testOptimal() {
+      // Covering two rows twice with a column for both at 3 beats one column per row at 2 each
+      try(SimplexMaster master = new SimplexMaster(new double[]{ 2d, 2d })) {
+         master.addColumn(2d, new double[]{ 1d, 0d });
+         master.addColumn(2d, new double[]{ 0d, 1d });
+         master.addColumn(3d, new double[]{ 1d, 1d });
+         assertEquals(MasterProblem.Status.OPTIMAL, master.solve());
+         assertEquals(6d, master.objective(), 1e-9);
+         assertEquals(2d, master.primal()[2], 1e-9);
+         assertEquals(3d, master.duals()[0] + master.duals()[1], 1e-9);
+      }
+   }
+
+   @Test
+   public void testBoundedVariables() {
+      try(SimplexMaster master = new SimplexMaster(new double[]{ 2d, 2d })) {
+         master.addColumn(2d, new double[]{ 1d, 0d });
+         master.addColumn(2d, new double[]{ 0d, 1d });
+         master.addColumn(3d, new double[]{ 1d, 1d });
+
+         // An upper bound on the cheapest column leaves the rest of the demand to the others
+         master.setBounds(2, 0d, 0.5d);
+         assertEquals(MasterProblem.Status.OPTIMAL, master.solve());
+         assertEquals(0.5d, master.primal()[2], 1e-9);
+         assertEquals(7.5d, master.objective(), 1e-9);
+
+         // A lower bound forces a column in, even beyond the demand, which leaves the second row to its own column
+         master.setBounds(2, 0d, Double.POSITIVE_INFINITY);
+         master.setBounds(0, 3d, 3d);
+         assertEquals(MasterProblem.Status.OPTIMAL, master.solve());
+         assertEquals(3d, master.primal()[0], 1e-9);
+         assertEquals(2d, master.primal()[1], 1e-9);
+         assertEquals(0d, master.primal()[2], 1e-9);
+         assertEquals(10d, master.objective(), 1e-9);
+
+         // Lifting the bounds again restores the first optimum
+         master.setBounds(0, 0d, Double.POSITIVE_INFINITY);
+         assertEquals(MasterProblem.Status.OPTIMAL, master.solve());
+         assertEquals(6d, master.objective(), 1e-9);
+      }
+   }
+
+   @Test
+   public void testInfeasible() {
+      // A row that no column covers cannot be satisfied
+      try(SimplexMaster master = new SimplexMaster(new double[]{ 1d, 1d })) {
+         master.addColumn(1d, new double[]{ 1d, 0d });
+         assertEquals(MasterProblem.Status.INFEASIBLE, master.solve());
+      }
+      // Nor can a row whose only column is bounded below its demand
+      try(SimplexMaster master = new SimplexMaster(new double[]{ 2d })) {
+         master.addColumn(1d, new double[]{ 1d });
+         master.setBounds(0, 0d, 1d);
+         assertEquals(MasterProblem.Status.INFEASIBLE, master.solve());
+      }
+   }
+
+   @Test
+   public void testUnbounded() {
+      try(SimplexMaster master = new SimplexMaster(new double[]{ 1d })) {
+         master.addColumn(1d, new double[]{ 1d });
+         master.addColumn(-1d, new double[]{ 1d });
+         assertEquals(MasterProblem.Status.UNBOUNDED, master.solve());
+
+         // Bounding the column of negative cost makes the lp bounded again
+         master.setBounds(1, 0d, 4d);
+         assertEquals(MasterProblem.Status.OPTIMAL, master.solve());
+         assertEquals(-4d, master.objective(), 1e-9);
+      }
+   }
+}